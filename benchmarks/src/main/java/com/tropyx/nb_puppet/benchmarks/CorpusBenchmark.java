@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.benchmarks;
+
+import com.tropyx.nb_puppet.indexer.LegacyPPIndexer;
+import com.tropyx.nb_puppet.indexer.PPIndexer;
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses and indexes every manifest of a generated control repository, see {@link CorpusGenerator}.
+ * {@code legacy} indexes with the field collection from before the single traversal for comparison.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CorpusBenchmark {
+
+    @Param({"100", "1000"})
+    public int modules;
+
+    @Param({"visitor", "legacy"})
+    public String indexer;
+
+    private Path root;
+    private final List<Path> manifests = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("puppet-corpus");
+        new CorpusGenerator().setModules(modules).generate(root);
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (file.getFileName().toString().endsWith(".pp")) {
+                    manifests.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Benchmark
+    public void parseAndIndex(final Blackhole bh) throws IOException {
+        final PPIndexer.DocumentSink sink = new PPIndexer.DocumentSink() {
+            @Override
+            public void addPair(String key, String value, boolean searchable, boolean stored) {
+                bh.consume(value);
+            }
+        };
+        PPIndexer.DocumentFactory factory = new PPIndexer.DocumentFactory() {
+            @Override
+            public PPIndexer.DocumentSink createDocument() {
+                return sink;
+            }
+        };
+        for (Path file : manifests) {
+            PElement tree = PuppetSourceParser.parse(file);
+            if ("legacy".equals(indexer)) {
+                LegacyPPIndexer.buildDocument(tree, sink);
+            } else {
+                PPIndexer.buildDocuments(tree, factory);
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates a synthetic control repository of configurable size and shape:
+ * <pre>
+ * manifests/site.pp                      node definitions including module classes
+ * hieradata/common.yaml                  class parameter values
+ * modules/modN/manifests/init.pp         class modN inherits modN::params
+ * modules/modN/manifests/params.pp       large case statement
+ * modules/modN/manifests/levelK.pp       modN::levelK inherits modN::level(K-1), the inherits chain
+ * </pre>
+ * The output only depends on the settings and the seed. The root and every module are recognized
+ * as puppet projects (manifests/site.pp, manifests/init.pp).
+ * Usage: {@code java -cp benchmarks.jar com.tropyx.nb_puppet.benchmarks.CorpusGenerator
+ * [--modules N] [--depth N] [--resources N] [--cases N] [--includes N] [--hiera-keys N] [--nodes N] [--seed N] outputDir}
+ */
+public final class CorpusGenerator {
+
+    private static final String[] RESOURCE_TYPES = {"file", "package", "service", "exec", "user", "group", "cron"};
+    private static final String[] OS_FAMILIES = {"RedHat", "Debian", "Suse", "Archlinux", "Gentoo", "Solaris", "FreeBSD"};
+
+    private int modules = 100;
+    private int depth = 3;
+    private int resources = 5;
+    private int cases = 10;
+    private int includes = 3;
+    private int hieraKeys = 5;
+    private int nodes = 50;
+    private long seed = 1;
+
+    public CorpusGenerator setModules(int modules) {
+        this.modules = modules;
+        return this;
+    }
+
+    /**
+     * @param depth length of the inherits chain in each module
+     */
+    public CorpusGenerator setDepth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public CorpusGenerator setResources(int resources) {
+        this.resources = resources;
+        return this;
+    }
+
+    /**
+     * @param cases number of branches in the case statement of each params class
+     */
+    public CorpusGenerator setCases(int cases) {
+        this.cases = cases;
+        return this;
+    }
+
+    /**
+     * @param includes number of other module classes in each include/contain list
+     */
+    public CorpusGenerator setIncludes(int includes) {
+        this.includes = includes;
+        return this;
+    }
+
+    /**
+     * @param hieraKeys number of hiera keys per module in common.yaml
+     */
+    public CorpusGenerator setHieraKeys(int hieraKeys) {
+        this.hieraKeys = hieraKeys;
+        return this;
+    }
+
+    public CorpusGenerator setNodes(int nodes) {
+        this.nodes = nodes;
+        return this;
+    }
+
+    public CorpusGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public void generate(Path root) throws IOException {
+        Random random = new Random(seed);
+        for (int m = 0; m < modules; m++) {
+            Path manifests = root.resolve("modules").resolve(module(m)).resolve("manifests");
+            Files.createDirectories(manifests);
+            write(manifests.resolve("init.pp"), initClass(m, random));
+            write(manifests.resolve("params.pp"), paramsClass(m));
+            for (int level = 1; level <= depth; level++) {
+                write(manifests.resolve("level" + level + ".pp"), levelClass(m, level, random));
+            }
+        }
+        Files.createDirectories(root.resolve("manifests"));
+        write(root.resolve("manifests").resolve("site.pp"), site(random));
+        Files.createDirectories(root.resolve("hieradata"));
+        write(root.resolve("hieradata").resolve("common.yaml"), hiera(random));
+    }
+
+    private static String module(int m) {
+        return "mod" + m;
+    }
+
+    private String initClass(int m, Random random) {
+        String name = module(m);
+        StringBuilder sb = new StringBuilder();
+        sb.append("# Class: ").append(name).append("\n");
+        sb.append("class ").append(name).append(" (\n");
+        for (int k = 0; k < hieraKeys; k++) {
+            sb.append("  $param").append(k).append(" = $").append(name).append("::params::param").append(k).append(",\n");
+        }
+        sb.append(") inherits ").append(name).append("::params {\n");
+        includeList(sb, "include", m, random);
+        includeList(sb, "contain", m, random);
+        resources(sb, name, name + "::params", random);
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private String paramsClass(int m) {
+        String name = module(m);
+        StringBuilder sb = new StringBuilder();
+        sb.append("class ").append(name).append("::params {\n");
+        sb.append("  case $::osfamily {\n");
+        for (int c = 0; c < cases; c++) {
+            String family = c < OS_FAMILIES.length ? OS_FAMILIES[c] : OS_FAMILIES[c % OS_FAMILIES.length] + c;
+            sb.append("    '").append(family).append("': {\n");
+            for (int k = 0; k < hieraKeys; k++) {
+                sb.append("      $param").append(k).append(" = '").append(family.toLowerCase()).append('-').append(k).append("'\n");
+            }
+            sb.append("    }\n");
+        }
+        sb.append("    default: {\n");
+        sb.append("      fail(\"The ${module_name} module is not supported on ${::osfamily}\")\n");
+        sb.append("    }\n");
+        sb.append("  }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private String levelClass(int m, int level, Random random) {
+        String name = module(m);
+        String parent = level == 1 ? name : name + "::level" + (level - 1);
+        StringBuilder sb = new StringBuilder();
+        sb.append("class ").append(name).append("::level").append(level).append(" inherits ").append(parent).append(" {\n");
+        sb.append("  $level").append(level).append("_dir = \"/opt/${param0}/level").append(level).append("\"\n");
+        includeList(sb, "include", m, random);
+        resources(sb, name + "-level" + level, parent, random);
+        sb.append("  if $::osfamily == 'RedHat' {\n");
+        sb.append("    notice(\"level ").append(level).append(" of ${module_name}\")\n");
+        sb.append("  } elsif $::osfamily == 'Debian' {\n");
+        sb.append("    $extra = \"${level").append(level).append("_dir}/debian\"\n");
+        sb.append("  } else {\n");
+        sb.append("    warning('unknown os')\n");
+        sb.append("  }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private void includeList(StringBuilder sb, String function, int m, Random random) {
+        if (includes == 0 || modules < 2) {
+            return;
+        }
+        sb.append("  ").append(function).append(' ');
+        for (int i = 0; i < includes; i++) {
+            int other = random.nextInt(modules);
+            if (other == m) {
+                other = (other + 1) % modules;
+            }
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(module(other));
+            if (depth > 0 && random.nextBoolean()) {
+                sb.append("::level").append(1 + random.nextInt(depth));
+            }
+        }
+        sb.append("\n");
+    }
+
+    private void resources(StringBuilder sb, String title, String required, Random random) {
+        for (int r = 0; r < resources; r++) {
+            String type = RESOURCE_TYPES[random.nextInt(RESOURCE_TYPES.length)];
+            sb.append("  ").append(type).append(" { '").append(title).append('-').append(r).append("':\n");
+            sb.append("    ensure  => present,\n");
+            sb.append("    tag     => '").append(title).append("',\n");
+            sb.append("    require => Class['").append(required).append("'],\n");
+            sb.append("  }\n");
+        }
+    }
+
+    private String site(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < nodes; n++) {
+            sb.append("node 'host").append(n).append(".example.com'");
+            if (n % 5 == 0) {
+                sb.append(", /^web").append(n).append("\\d+\\.example\\.com$/");
+            }
+            sb.append(" {\n");
+            if (modules > 0) {
+                int m = random.nextInt(modules);
+                sb.append("  include ").append(module(m));
+                if (depth > 0) {
+                    sb.append("::level").append(depth);
+                }
+                sb.append("\n");
+            }
+            sb.append("}\n\n");
+        }
+        sb.append("node default {\n}\n");
+        return sb.toString();
+    }
+
+    private String hiera(Random random) {
+        StringBuilder sb = new StringBuilder("---\n");
+        for (int m = 0; m < modules; m++) {
+            for (int k = 0; k < hieraKeys; k++) {
+                sb.append(module(m)).append("::param").append(k).append(": 'value-").append(random.nextInt(1000)).append("'\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write(content);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        CorpusGenerator gen = new CorpusGenerator();
+        Path out = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                out = Paths.get(arg);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--modules":
+                    gen.setModules(Integer.parseInt(value));
+                    break;
+                case "--depth":
+                    gen.setDepth(Integer.parseInt(value));
+                    break;
+                case "--resources":
+                    gen.setResources(Integer.parseInt(value));
+                    break;
+                case "--cases":
+                    gen.setCases(Integer.parseInt(value));
+                    break;
+                case "--includes":
+                    gen.setIncludes(Integer.parseInt(value));
+                    break;
+                case "--hiera-keys":
+                    gen.setHieraKeys(Integer.parseInt(value));
+                    break;
+                case "--nodes":
+                    gen.setNodes(Integer.parseInt(value));
+                    break;
+                case "--seed":
+                    gen.setSeed(Long.parseLong(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("output directory not specified");
+        }
+        gen.generate(out);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.benchmarks;
+
+import com.tropyx.nb_puppet.indexer.LegacyPPIndexer;
+import com.tropyx.nb_puppet.indexer.PPIndexer;
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Document building pass of {@link PPIndexer} over a parsed tree.
+ * {@code legacy} runs the field collection from before the single traversal for comparison.
+ * With a {@code cold} index every invocation gets a fresh tree whose element index was never
+ * queried, like a file parsed by background indexing, {@code warm} reuses one tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexerBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"visitor", "legacy"})
+    public String indexer;
+
+    @Param({"cold", "warm"})
+    public String index;
+
+    private String text;
+    private PElement root;
+
+    @Setup
+    public void setup() {
+        text = Manifests.create(size);
+        root = PuppetSourceParser.parse(text);
+    }
+
+    @Setup(Level.Invocation)
+    public void parse() {
+        if ("cold".equals(index)) {
+            root = PuppetSourceParser.parse(text);
+        }
+    }
+
+    @Benchmark
+    public void buildDocument(final Blackhole bh) {
+        final PPIndexer.DocumentSink sink = new PPIndexer.DocumentSink() {
+            @Override
+            public void addPair(String key, String value, boolean searchable, boolean stored) {
+                bh.consume(key);
+                bh.consume(value);
+            }
+        };
+        if ("legacy".equals(indexer)) {
+            LegacyPPIndexer.buildDocument(root, sink);
+        } else {
+            PPIndexer.buildDocuments(root, new PPIndexer.DocumentFactory() {
+                @Override
+                public PPIndexer.DocumentSink createDocument() {
+                    return sink;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.benchmarks;
+
+import com.tropyx.nb_puppet.lexer.LegacyLangHierarchy;
+import com.tropyx.nb_puppet.lexer.PLangHierarchy;
+import com.tropyx.nb_puppet.lexer.PTokenId;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.netbeans.api.lexer.Language;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenSequence;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lexing throughput of PLexer, the {@code bytes} counter (UTF-8 size of the lexed text) divided by 10^6 is MB/s.
+ * {@code legacy} runs the lexer from before table driven keyword recognition for comparison.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"table", "legacy"})
+    public String lexer;
+
+    private String text;
+    private int byteLength;
+    private Language<PTokenId> language;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        text = Manifests.create(size);
+        byteLength = text.getBytes(StandardCharsets.UTF_8).length;
+        language = "legacy".equals(lexer) ? new LegacyLangHierarchy().language() : new PLangHierarchy().language();
+    }
+
+    @Benchmark
+    public int lex(Bytes counter) {
+        TokenSequence<PTokenId> ts = TokenHierarchy.create(text, language).tokenSequence(language);
+        int count = 0;
+        while (ts.moveNext()) {
+            count += ts.token().id().ordinal();
+        }
+        counter.bytes += byteLength;
+        return count;
+    }
+}
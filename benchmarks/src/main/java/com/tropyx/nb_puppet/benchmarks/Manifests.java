@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.benchmarks;
+
+/**
+ * Manifest sources of the sizes the benchmarks are parameterized with.
+ */
+public final class Manifests {
+
+    private Manifests() {
+    }
+
+    /**
+     * @param size small (single class, about 1 KB), medium (about 30 KB) or large (about 3 MB)
+     * @return manifest text
+     */
+    public static String create(String size) {
+        switch (size) {
+            case "small":
+                return generate(1);
+            case "medium":
+                return generate(25);
+            case "large":
+                return generate(2500);
+            default:
+                throw new IllegalArgumentException(size);
+        }
+    }
+
+    public static String generate(int classes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < classes; i++) {
+            sb.append("# Class: module").append(i).append("\n")
+              .append("class module").append(i).append("::server (\n")
+              .append("  $package_name = $module").append(i).append("::params::package_name,\n")
+              .append("  String $config_dir = '/etc/module").append(i).append("',\n")
+              .append("  $ensure = present,\n")
+              .append(") inherits module").append(i).append("::params {\n")
+              .append("  include stdlib, module").append(i).append("::config\n")
+              .append("  $config_file = \"${config_dir}/server.conf\"\n")
+              .append("  package { $package_name: ensure => $ensure }\n")
+              .append("  file { $config_file:\n")
+              .append("    ensure  => file,\n")
+              .append("    owner   => 'root',\n")
+              .append("    content => template('module").append(i).append("/server.conf.erb'),\n")
+              .append("    require => Package[$package_name],\n")
+              .append("    notify  => Service['module").append(i).append("'],\n")
+              .append("  }\n")
+              .append("  case $::osfamily {\n")
+              .append("    'RedHat': { $service_name = 'module").append(i).append("d' }\n")
+              .append("    'Debian': { $service_name = 'module").append(i).append("' }\n")
+              .append("    default: { fail(\"unsupported ${::osfamily}\") }\n")
+              .append("  }\n")
+              .append("  if $ensure == present {\n")
+              .append("    service { 'module").append(i).append("': ensure => running, name => $service_name }\n")
+              .append("  } else {\n")
+              .append("    notice(\"module").append(i).append(" removed\")\n")
+              .append("  }\n")
+              .append("}\n\n");
+        }
+        return sb.toString();
+    }
+}
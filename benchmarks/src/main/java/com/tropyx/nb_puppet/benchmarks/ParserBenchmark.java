@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.benchmarks;
+
+import com.tropyx.nb_puppet.lexer.PTokenId;
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.netbeans.api.lexer.TokenSequence;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse latency per file. {@link #parse()} includes lexing, {@link #ast()} runs over
+ * an already lexed token sequence, so with {@code -prof gc} its {@code gc.alloc.rate.norm}
+ * divided by the reported {@code sourceBytes} is the AST allocation per byte of source.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private String text;
+    private int byteLength;
+    private TokenSequence<PTokenId> lexed;
+
+    /**
+     * reports the UTF-8 size of the parsed manifest next to the timings
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Source {
+        public long sourceBytes;
+    }
+
+    @Setup
+    public void setup() {
+        text = Manifests.create(size);
+        byteLength = text.getBytes(StandardCharsets.UTF_8).length;
+        lexed = PuppetSourceParser.tokenSequence(text);
+        //the token hierarchy keeps the tokens once created
+        while (lexed.moveNext()) {
+        }
+    }
+
+    @Benchmark
+    public PElement parse(Source source) {
+        source.sourceBytes = byteLength;
+        return PuppetSourceParser.parse(text);
+    }
+
+    @Benchmark
+    public PElement ast(Source source) {
+        source.sourceBytes = byteLength;
+        return PuppetSourceParser.parseTokens(lexed);
+    }
+}
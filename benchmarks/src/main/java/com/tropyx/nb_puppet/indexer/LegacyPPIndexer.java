@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import static com.tropyx.nb_puppet.indexer.PPIndexer.*;
+
+import com.tropyx.nb_puppet.parser.PClass;
+import com.tropyx.nb_puppet.parser.PClassParam;
+import com.tropyx.nb_puppet.parser.PClassRef;
+import com.tropyx.nb_puppet.parser.PDefine;
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PElementIndex;
+import com.tropyx.nb_puppet.parser.PFunction;
+import com.tropyx.nb_puppet.parser.PParamContainer;
+import com.tropyx.nb_puppet.parser.PResource;
+import com.tropyx.nb_puppet.parser.PVariable;
+import com.tropyx.nb_puppet.parser.PVariableDefinition;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link PPIndexer#buildDocument} before it became a single traversal, the baseline
+ * for {@code IndexerBenchmark} and {@code CorpusBenchmark}.
+ */
+public final class LegacyPPIndexer {
+
+    private LegacyPPIndexer() {
+    }
+
+    public static void buildDocument(PElement root, PPIndexer.DocumentSink document) {
+        PElementIndex elements = root.getIndex();
+        for (PElement ch : root.getChildren()) {
+            if (ch.getType() == PElement.CLASS) {
+                PClass cl = (PClass)ch;
+                String name = cl.getName();
+                document.addPair(FLD_ROOT, name, true, true);
+                document.addPair(FLD_CLASS, name, true, false);
+                if (cl.getInherits() != null) {
+                    document.addPair(FLD_CLASSREF, cl.getInherits().getName(), true, false);
+                    document.addPair(FLD_INHERIT, cl.getInherits().getName(), true, true);
+                }
+            }
+            if (ch.getType() == PElement.DEFINE) {
+                PDefine def = (PDefine)ch;
+                String name = def.getName();
+                document.addPair(FLD_ROOT, name, true, true);
+                document.addPair(FLD_DEFINE, name, true, false);
+            }
+            if (ch instanceof PParamContainer) {
+                PParamContainer cl = (PParamContainer)ch;
+                for (PClassParam param : cl.getParams()) {
+                    document.addPair(FLD_PARAM, stripDollar(param.getVariable()), false, true);
+                    if (param.getDefaultValue() == null) {
+                        document.addPair(FLD_REQ_PARAM, stripDollar(param.getVariable()), false, true);
+                    }
+                }
+            }
+            List<PClassRef> refs = elements.getElementsOfType(PClassRef.class, ch);
+            for (PClassRef ref : refs) {
+                document.addPair(FLD_CLASSREF, ref.getName(), true, false);
+            }
+            List<String> addedVars = new ArrayList<>();
+            List<PVariableDefinition> varDefs = elements.getElementsOfType(PVariableDefinition.class, ch);
+            for (PVariableDefinition vd : varDefs) {
+                if (!addedVars.contains(vd.getName())) {
+                    document.addPair(FLD_VAR, stripDollar(vd.getName()), true, true);
+                    document.addPair(FLD_VARREF, stripDollar(vd.getName()), true, false);
+                    addedVars.add(vd.getName());
+                }
+            }
+            List<PVariable> vars = elements.getElementsOfType(PVariable.class, ch);
+            for (PVariable v : vars) {
+                if (!addedVars.contains(v.getName())) {
+                    document.addPair(FLD_VARREF, stripDollar(v.getName()), true, false);
+                    addedVars.add(v.getName());
+                }
+            }
+            List<PResource> resources = elements.getElementsOfType(PResource.class, ch);
+            Set<String> resNames = new HashSet<>();
+
+            for (PResource r : resources) {
+                resNames.add(r.getResourceType());
+            }
+            for (String r : resNames) {
+                document.addPair(FLD_RESOURCE, r, true, false);
+            }
+            Set<String> fNames = new HashSet<>();
+            List<PFunction> funcs = elements.getElementsOfType(PFunction.class, ch);
+            for (PFunction r : funcs) {
+                fNames.add(r.getName());
+            }
+            for (String f : fNames) {
+                document.addPair(FLD_FUNCTION, f, true, false);
+            }
+        }
+    }
+
+    private static String stripDollar(String s) {
+        return s.startsWith("$") ? s.substring(1) : s;
+    }
+}
@@ -18,13 +18,20 @@
 package com.tropyx.nb_puppet.completion;
 
 import com.tropyx.nb_puppet.PPConstants;
+import com.tropyx.nb_puppet.indexer.BuiltInTypes;
+import com.tropyx.nb_puppet.indexer.HieraIndexer;
+import com.tropyx.nb_puppet.indexer.HieraIndexerFactory;
 import com.tropyx.nb_puppet.indexer.PPIndexer;
 import com.tropyx.nb_puppet.indexer.PPIndexerFactory;
+import com.tropyx.nb_puppet.indexer.RubyLibIndexer;
+import com.tropyx.nb_puppet.indexer.RubyLibIndexerFactory;
 import com.tropyx.nb_puppet.lexer.PLangHierarchy;
 import com.tropyx.nb_puppet.lexer.PTokenId;
+import com.tropyx.nb_puppet.parser.PBlob;
 import com.tropyx.nb_puppet.parser.PClass;
 import com.tropyx.nb_puppet.parser.PClassParam;
 import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PFunction;
 import com.tropyx.nb_puppet.parser.PuppetParserResult;
 import java.io.IOException;
 import java.util.Arrays;
@@ -32,6 +39,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.JTextComponent;
@@ -68,6 +79,7 @@ public class PCompletionProvider implements CompletionProvider {
                 final boolean[] completeVariablesInString = new boolean[1];
                 final boolean[] completeFunctions = new boolean[1];
                 final boolean[] completeResources = new boolean[1];
+                final boolean[] completeHieraKeys = new boolean[1];
                 final String[] prefix = new String[1];
                 
 //                runWithParserResult(document, new ParseResultRunnable() {
@@ -128,6 +140,10 @@ public class PCompletionProvider implements CompletionProvider {
                                     pref = text.substring(start, text.length()).replace("${", "$");
                                     completeVariables[0] = true;
                                     completeVariablesInString[0] = true;
+                                } else if (currentInText > 0 && (text.charAt(0) == '\'' || text.charAt(0) == '"')) {
+                                    //possibly a hiera key, the parse tree decides
+                                    prefix[0] = text.substring(1);
+                                    completeHieraKeys[0] = true;
                                 }
                             }
                             if (pref != null) {
@@ -146,7 +162,7 @@ public class PCompletionProvider implements CompletionProvider {
                     }
                 });
                 if (completeFunctions[0]) {
-                    completeFunctions(prefix[0], completionResultSet, caretOffset);
+                    completeFunctions(prefix[0], completionResultSet, caretOffset, document, queryType);
                 }
                 if (completeResources[0]) {
                     completeResources(prefix[0], completionResultSet, caretOffset, document, queryType);
@@ -164,6 +180,11 @@ public class PCompletionProvider implements CompletionProvider {
                     completionResultSet.finish();
                     return;
                 }
+                if (completeHieraKeys[0]) {
+                    completeHieraKeys(prefix[0], completionResultSet, caretOffset, document, queryType);
+                    completionResultSet.finish();
+                    return;
+                }
                 if (completeVariables[0]) {
                     final boolean thisProjectOnly = checkAndMarkQueryType(queryType, completionResultSet);
                     runWithParserResult(document, new ParseResultRunnable() {
@@ -201,6 +222,10 @@ public class PCompletionProvider implements CompletionProvider {
                                     );
                                 for (IndexResult res : query.execute(PPIndexer.FLD_VAR, PPIndexer.FLD_ROOT)) {
                                     String clazz = res.getValue(PPIndexer.FLD_ROOT);
+                                    if (clazz == null) {
+                                        //node or top level document, no class to qualify with
+                                        clazz = "";
+                                    }
                                     for (String val : new HashSet<>(Arrays.asList(res.getValues(PPIndexer.FLD_VAR)))) {
                                         if (val.startsWith(pref) || clazz.startsWith(pref)) {
                                             completionResultSet.addItem(new PPVariableCompletionItem(prefix[0], val, caretOffset, clazz, currentName, inherits, completeVariablesInString[0]));
@@ -226,7 +251,7 @@ public class PCompletionProvider implements CompletionProvider {
         }, component);
     }
 
-    private void completeFunctions(String prefix, CompletionResultSet completionResultSet, int offset) {
+    private void completeFunctions(String prefix, CompletionResultSet completionResultSet, int offset, Document document, int queryType) {
         for (PTokenId token : PTokenId.values()) {
             if (PTokenId.Category.FUNCTION.equals(token.primaryCategory())) {
                 String name = token.name().toLowerCase(Locale.ENGLISH);
@@ -238,9 +263,29 @@ public class PCompletionProvider implements CompletionProvider {
         for (String builtin : BuiltInFunctions.get()) {
             completionResultSet.addItem(new PPFunctionCompletionItem(prefix, builtin, offset));
         }
+        try {
+            boolean thisProjectOnly = checkAndMarkQueryType(queryType, completionResultSet);
+            QuerySupport qs = RubyLibIndexerFactory.getQuerySupportFor(document, !thisProjectOnly);
+            Set<String> functions = new TreeSet<>();
+            for (IndexResult res : qs.query(RubyLibIndexer.FLD_FUNCTION, prefix, QuerySupport.Kind.PREFIX, RubyLibIndexer.FLD_FUNCTION)) {
+                for (String function : res.getValues(RubyLibIndexer.FLD_FUNCTION)) {
+                    if (function.startsWith(prefix)) {
+                        functions.add(function);
+                    }
+                }
+            }
+            for (String function : functions) {
+                completionResultSet.addItem(new PPFunctionCompletionItem(prefix, function, offset));
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
     }
 
     private void completeResources(String prefix, CompletionResultSet completionResultSet, int caretOffset, Document document, int queryType) {
+        for (BuiltInTypes.Type type : BuiltInTypes.getDefault().getTypes(prefix)) {
+            completionResultSet.addItem(new PPResourceCompletionItem(prefix, type.getName(), caretOffset, type.getRequiredParams()));
+        }
         try {
             boolean thisProjectOnly = checkAndMarkQueryType(queryType, completionResultSet);
             QuerySupport qs = PPIndexerFactory.getQuerySupportFor(document, !thisProjectOnly);
@@ -248,11 +293,68 @@ public class PCompletionProvider implements CompletionProvider {
                 String def = res.getValue(PPIndexer.FLD_ROOT);
                 completionResultSet.addItem(new PPResourceCompletionItem(prefix, def, caretOffset, res.getValues(PPIndexer.FLD_REQ_PARAM)));
             }
+            //custom types, the title is the namevar, no other parameter is known to be required
+            QuerySupport rubyQs = RubyLibIndexerFactory.getQuerySupportFor(document, !thisProjectOnly);
+            for (IndexResult res : rubyQs.query(RubyLibIndexer.FLD_TYPE, prefix, QuerySupport.Kind.PREFIX, RubyLibIndexer.FLD_TYPE)) {
+                for (String type : res.getValues(RubyLibIndexer.FLD_TYPE)) {
+                    if (type.startsWith(prefix)) {
+                        completionResultSet.addItem(new PPResourceCompletionItem(prefix, type, caretOffset, new String[0]));
+                    }
+                }
+            }
         } catch (IOException ex) {
             Exceptions.printStackTrace(ex);
         }
     }
 
+    /**
+     * keys of the hiera data files, when completing the string argument of lookup() or hiera*().
+     */
+    private void completeHieraKeys(final String prefix, CompletionResultSet completionResultSet, int caretOffset, final Document document, int queryType) {
+        final boolean[] inLookup = new boolean[1];
+        final int stringOffset = caretOffset - prefix.length() - 1;
+        runWithParserResult(document, new ParseResultRunnable() {
+            @Override
+            public void run(PElement rootNode) {
+                if (rootNode == null) {
+                    return;
+                }
+                PElement node = rootNode.getChildAtOffset(stringOffset);
+                if (node.isType(PElement.STRING) && node.getOffset() == stringOffset) {
+                    PElement parent = node.getParentIgnore(PBlob.class);
+                    inLookup[0] = parent != null && parent.isType(PElement.FUNCTION)
+                            && HieraIndexer.isLookupFunction(((PFunction) parent).getName());
+                }
+            }
+        });
+        if (!inLookup[0]) {
+            return;
+        }
+        try {
+            boolean thisProjectOnly = checkAndMarkQueryType(queryType, completionResultSet);
+            QuerySupport qs = HieraIndexerFactory.getQuerySupportFor(document, !thisProjectOnly);
+            Map<String, Set<String>> levels = new TreeMap<>();
+            for (IndexResult res : qs.query(HieraIndexer.FLD_KEY, prefix, QuerySupport.Kind.PREFIX, HieraIndexer.FLD_KEY, HieraIndexer.FLD_LEVEL)) {
+                String level = res.getValue(HieraIndexer.FLD_LEVEL);
+                for (String key : res.getValues(HieraIndexer.FLD_KEY)) {
+                    if (key.startsWith(prefix)) {
+                        Set<String> keyLevels = levels.get(key);
+                        if (keyLevels == null) {
+                            keyLevels = new TreeSet<>();
+                            levels.put(key, keyLevels);
+                        }
+                        keyLevels.add(level);
+                    }
+                }
+            }
+            for (Map.Entry<String, Set<String>> entry : levels.entrySet()) {
+                String rightText = entry.getValue().toString();
+                completionResultSet.addItem(new PPCompletionItem(prefix, entry.getKey(), caretOffset, rightText.substring(1, rightText.length() - 1)));
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+    }
 
     private boolean checkAndMarkQueryType(int queryType, CompletionResultSet completionResultSet) {
         final boolean thisProjectOnly = queryType == COMPLETION_QUERY_TYPE;
@@ -4,6 +4,10 @@ package com.tropyx.nb_puppet.hyperlink;
 import com.tropyx.nb_puppet.PPConstants;
 import com.tropyx.nb_puppet.PuppetProject;
 import com.tropyx.nb_puppet.completion.PCompletionProvider;
+import com.tropyx.nb_puppet.indexer.HieraIndexer;
+import com.tropyx.nb_puppet.indexer.HieraIndexerFactory;
+import com.tropyx.nb_puppet.indexer.PPIndexer;
+import com.tropyx.nb_puppet.indexer.PPIndexerFactory;
 import com.tropyx.nb_puppet.parser.PBlob;
 import com.tropyx.nb_puppet.parser.PClass;
 import com.tropyx.nb_puppet.parser.PClassRef;
@@ -15,10 +19,19 @@ import com.tropyx.nb_puppet.parser.PVariable;
 import com.tropyx.nb_puppet.parser.PVariableDefinition;
 import com.tropyx.nb_puppet.refactoring.PPWhereUsedQueryPlugin;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import org.netbeans.api.editor.mimelookup.MimeRegistration;
@@ -29,6 +42,8 @@ import org.netbeans.editor.Utilities;
 import org.netbeans.lib.editor.hyperlink.spi.HyperlinkProviderExt;
 import org.netbeans.lib.editor.hyperlink.spi.HyperlinkType;
 import org.netbeans.modules.editor.NbEditorUtilities;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexResult;
+import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport;
 import org.openide.cookies.EditCookie;
 import org.openide.cookies.LineCookie;
 import org.openide.cookies.OpenCookie;
@@ -50,6 +65,7 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
     private static final int TYPE_VARIABLE = 1;
     private static final int TYPE_CLASS_REF = 2;
     private static final int TYPE_TEMPLATE = 3;
+    private static final int TYPE_HIERA_KEY = 4;
 
 
     @Override
@@ -94,7 +110,22 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
         return null;
     }
 
+    /**
+     * hover calls isHyperlinkPoint, getHyperlinkSpan and getTooltipText for the same offset,
+     * the target is resolved once and kept until the document changes.
+     */
     Tuple getTuple(final Document doc, final int offset) {
+        TupleCache cache = TupleCache.get(doc);
+        int version = cache.getVersion();
+        Tuple tup = cache.find(offset);
+        if (tup == null) {
+            tup = resolveTuple(doc, offset);
+            cache.put(version, offset, tup != null ? tup : TupleCache.NONE);
+        }
+        return tup != TupleCache.NONE ? tup : null;
+    }
+
+    private Tuple resolveTuple(final Document doc, final int offset) {
         final String[] fValue = new String[1];
         final int[] fTokenOff = new int[1];
         final int[] fAssociatedType = new int[1];
@@ -130,6 +161,10 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
                                 fTokenOff[0] = currentNode.getOffset() + 1;
                                 fAssociatedType[0] = TYPE_TEMPLATE;
                                 fValue[0] = ((PString)currentNode).getValue();
+                            } else if (HieraIndexer.isLookupFunction(f.getName()) && !((PString)currentNode).getValue().isEmpty()) {
+                                fTokenOff[0] = currentNode.getOffset() + 1;
+                                fAssociatedType[0] = TYPE_HIERA_KEY;
+                                fValue[0] = ((PString)currentNode).getValue();
                             }
                         }
                     }
@@ -156,52 +191,42 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
         if (tup.associatedType == TYPE_TEMPLATE) {
             path = path.replaceFirst("\\/", "/templates/");
             openDocument(doc, path, true);
+        } else if (tup.associatedType == TYPE_HIERA_KEY) {
+            showHieraKeyFromIndex(doc, path);
         } else if (tup.associatedType == TYPE_VARIABLE) {
-            //substring removes $
             Pair<String, String> pair = getPathAndVariable(path);
-            if (pair != null) {
-                path = pair.first();
-                Document targetDoc;
-                if (path == null) {
-                    targetDoc = doc;
-                } else {
-                    //TODO open document but not editor view only once found, open view
-                    targetDoc = openDocument(doc, path, false);
-                }
-                final String variableName = pair.second();
-                if (targetDoc != null) {
-                    final BaseDocument bd = (BaseDocument)targetDoc;
-                    final boolean[] found = new boolean[1];
-                    final String[] inherits = new String[1];
-                    PCompletionProvider.runWithParserResult(targetDoc, new PCompletionProvider.ParseResultRunnable() {
-                            @Override
-                            public void run(PElement rootNode) {
-                                for (PVariableDefinition def : rootNode.getChildrenOfType(PVariableDefinition.class, true)) {
-                                    if (variableName.equals(def.getName())) {
-                                        showAtOffset(bd, def.getOffset());
-                                        found[0] = true;
-                                        break; //first one only
-                                    }
-                                }
-                                if (!found[0]) {
-                                    //TODO open document but not editor view only once found, open view
-                                    List<PClass> clazz = rootNode.getChildrenOfType(PClass.class, false);
-                                    if (clazz.size() > 0) {
-                                        PClassRef ref = clazz.get(0).getInherits();
-                                        if (ref != null) {
-                                            inherits[0] = ref.getName();
-                                        }
-                                    }
-                                }
-                            }
-                    });
-                    if (!found[0] && inherits[0] != null) {
-                        Tuple newTup = new Tuple(inherits[0] + "::" + variableName, tup.associatedType, tup.tokenOffset);
-                        performJump(newTup, doc);
+            final String variableName = pair.second();
+            String className = getClassName(path);
+            if (className == null) {
+                //local or inherited variable, the current document is parsed already
+                final int[] offset = new int[] {-1};
+                final String[] inherits = new String[1];
+                PCompletionProvider.runWithParserResult(doc, new PCompletionProvider.ParseResultRunnable() {
+                    @Override
+                    public void run(PElement rootNode) {
+                        if (rootNode != null) {
+                            offset[0] = findVariableDefinition(rootNode, variableName);
+                            inherits[0] = getInherits(rootNode);
+                        }
                     }
+                });
+                if (offset[0] >= 0) {
+                    showAtOffset((BaseDocument) doc, offset[0]);
+                    return;
+                }
+                className = inherits[0];
+                if (className == null) {
+                    return;
                 }
             }
+            if (showVariableFromIndex(doc, className, variableName.substring(1))) {
+                return;
+            }
+            showVariableFromSources(doc, className, variableName);
         } else if (tup.associatedType == TYPE_CLASS_REF) {
+            if (showClassFromIndex(doc, path)) {
+                return;
+            }
             String[] splitValue = path.split("\\:\\:");
             if (splitValue.length > 0) {
                 String module = splitValue[0];
@@ -215,8 +240,7 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
                 } else {
                     file = "init.pp";
                 }
-                //TODO try the index first to find the right file without path translations?
-                //what if we have 2 checkouts of the same module but different versions or what not
+                //not indexed (yet), translate the name to the conventional path
                 Document targetDoc = openDocument(doc, module + "/manifests/" + file, true);
                 if (targetDoc != null) {
                     final String fPath = path;
@@ -240,6 +264,217 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
         }
     }
 
+    /**
+     * opens the class declaration at the offset stored in the index, no parsing involved.
+     * @return false if the index doesn't know the class
+     */
+    private boolean showClassFromIndex(Document doc, String className) {
+        try {
+            IndexResult r = findDeclaration(doc, className, PPIndexer.FLD_ROOT_OFFSET);
+            if (r != null) {
+                int offset = PPIndexer.getOffset(r, PPIndexer.FLD_ROOT_OFFSET, className);
+                return offset >= 0 && showInFile(r.getFile(), offset);
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        return false;
+    }
+
+    /**
+     * opens the variable definition in the class or its ancestors at the offset stored in the index,
+     * the whole inheritance chain is resolved with a single query.
+     * @param variableName without $
+     * @return false if the index doesn't know the variable
+     */
+    boolean showVariableFromIndex(Document doc, String className, String variableName) {
+        try {
+            List<String> chain = new ArrayList<>();
+            chain.add(className);
+            chain.addAll(getAncestors(doc, className));
+            Map<String, IndexResult> declarations = findDeclarations(doc, chain, PPIndexer.FLD_VAR_OFFSET);
+            for (String clazz : chain) {
+                IndexResult r = declarations.get(clazz);
+                if (r != null) {
+                    int offset = PPIndexer.getOffset(r, PPIndexer.FLD_VAR_OFFSET, variableName);
+                    if (offset >= 0) {
+                        return showInFile(r.getFile(), offset);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        return false;
+    }
+
+    /**
+     * @return all classes the class inherits from according to the index, nearest first
+     */
+    List<String> getAncestors(Document doc, String className) throws IOException {
+        return PPIndexerFactory.getInheritanceGraphFor(doc, true).getAncestors(className);
+    }
+
+    /**
+     * opens the hiera data file defining the key. When several hierarchy levels define it,
+     * the current project wins, then the most general level (least nested path).
+     */
+    private boolean showHieraKeyFromIndex(Document doc, String key) {
+        try {
+            QuerySupport qs = HieraIndexerFactory.getQuerySupportFor(doc, true);
+            FileObject current = NbEditorUtilities.getFileObject(doc);
+            Project project = current != null ? FileOwnerQuery.getOwner(current) : null;
+            IndexResult best = null;
+            int bestRank = Integer.MAX_VALUE;
+            for (IndexResult r : qs.query(HieraIndexer.FLD_KEY, key, QuerySupport.Kind.EXACT, HieraIndexer.FLD_KEY_OFFSET, HieraIndexer.FLD_LEVEL)) {
+                FileObject file = r.getFile();
+                String level = r.getValue(HieraIndexer.FLD_LEVEL);
+                if (file == null || level == null) {
+                    continue;
+                }
+                int rank = level.split("/").length;
+                if (project == null || !project.equals(FileOwnerQuery.getOwner(file))) {
+                    rank += 1000;
+                }
+                if (rank < bestRank) {
+                    best = r;
+                    bestRank = rank;
+                }
+            }
+            if (best != null) {
+                int offset = PPIndexer.getOffset(best, HieraIndexer.FLD_KEY_OFFSET, key);
+                return showInFile(best.getFile(), Math.max(0, offset));
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        return false;
+    }
+
+    /**
+     * resolves class or define name to the index document declaring it, across all open projects.
+     * @param fields stored fields to load
+     * @return null if not indexed
+     */
+    private IndexResult findDeclaration(Document doc, String name, String... fields) throws IOException {
+        return findDeclarations(doc, Collections.singletonList(name), fields).get(name);
+    }
+
+    /**
+     * resolves class or define names to the index documents declaring them, across all open projects.
+     * When several checkouts of a module declare a name, the one from the project of the current file wins.
+     * @param fields stored fields to load
+     * @return name to document, names not indexed are missing
+     */
+    Map<String, IndexResult> findDeclarations(Document doc, Collection<String> names, String... fields) throws IOException {
+        FileObject current = NbEditorUtilities.getFileObject(doc);
+        Project project = current != null ? FileOwnerQuery.getOwner(current) : null;
+        Map<String, IndexResult> result = new HashMap<>();
+        Set<String> inProject = new HashSet<>();
+        for (IndexResult r : queryDeclarations(doc, names, fields)) {
+            String name = r.getValue(PPIndexer.FLD_ROOT);
+            FileObject file = r.getFile();
+            if (name == null || file == null || inProject.contains(name)) {
+                continue;
+            }
+            if (project != null && project.equals(FileOwnerQuery.getOwner(file))) {
+                inProject.add(name);
+                result.put(name, r);
+            } else if (!result.containsKey(name)) {
+                result.put(name, r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param fields stored fields to load, {@link PPIndexer#FLD_ROOT} is loaded as well
+     * @return index documents of the classes and defines with the given names, in all open projects
+     */
+    Collection<? extends IndexResult> queryDeclarations(Document doc, Collection<String> names, String... fields) throws IOException {
+        QuerySupport qs = PPIndexerFactory.getQuerySupportFor(doc, true);
+        QuerySupport.Query.Factory qf = qs.getQueryFactory();
+        List<QuerySupport.Query> queries = new ArrayList<>();
+        for (String name : names) {
+            queries.add(qf.field(PPIndexer.FLD_CLASS, name, QuerySupport.Kind.EXACT));
+            queries.add(qf.field(PPIndexer.FLD_DEFINE, name, QuerySupport.Kind.EXACT));
+        }
+        String[] loaded = Arrays.copyOf(fields, fields.length + 1);
+        loaded[fields.length] = PPIndexer.FLD_ROOT;
+        return qf.or(queries.toArray(new QuerySupport.Query[0])).execute(loaded);
+    }
+
+    /**
+     * fallback for classes the index doesn't know (yet), follows the inherits chain file by file.
+     * Files are parsed without loading editor documents, an editor is opened for the final hit only.
+     * @param variableName with $
+     */
+    boolean showVariableFromSources(Document doc, String className, String variableName) {
+        Set<String> visited = new HashSet<>();
+        while (className != null && visited.add(className)) {
+            FileObject fo = findDeclaringFile(doc, className, getPathAndVariable(className + "::" + variableName).first());
+            PElement root = fo != null ? PPWhereUsedQueryPlugin.parseFile(fo, new AtomicBoolean()) : null;
+            if (root == null) {
+                return false;
+            }
+            int offset = findVariableDefinition(root, variableName);
+            if (offset >= 0) {
+                return showInFile(fo, offset);
+            }
+            className = getInherits(root);
+        }
+        return false;
+    }
+
+    /**
+     * file declaring the class or define, path guessed from the name if the index doesn't know it.
+     */
+    private FileObject findDeclaringFile(Document currentDoc, String name, String path) {
+        try {
+            IndexResult r = findDeclaration(currentDoc, name);
+            if (r != null && r.getFile() != null) {
+                return r.getFile();
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        FileObject fo = NbEditorUtilities.getFileObject(currentDoc);
+        return fo != null ? findFile(fo, path) : null;
+    }
+
+    /**
+     * @param variableName with $
+     * @return offset of the first definition or -1
+     */
+    private static int findVariableDefinition(PElement root, String variableName) {
+        for (PVariableDefinition def : root.getChildrenOfType(PVariableDefinition.class, true)) {
+            if (variableName.equals(def.getName())) {
+                return def.getOffset();
+            }
+        }
+        return -1;
+    }
+
+    private static String getInherits(PElement root) {
+        List<PClass> clazz = root.getChildrenOfType(PClass.class, false);
+        if (!clazz.isEmpty()) {
+            PClassRef ref = clazz.get(0).getInherits();
+            if (ref != null) {
+                return ref.getName();
+            }
+        }
+        return null;
+    }
+
+    boolean showInFile(FileObject fo, int offset) {
+        Document targetDoc = openFile(fo, true);
+        if (targetDoc instanceof BaseDocument && offset <= targetDoc.getLength()) {
+            showAtOffset((BaseDocument) targetDoc, offset);
+            return true;
+        }
+        return false;
+    }
+
     public static void showAtOffset(BaseDocument bd, int offset) throws IndexOutOfBoundsException {
         try {
             int line = Utilities.getLineOffset(bd, offset);
@@ -256,23 +491,28 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
         if (fo != null) {
             FileObject res = findFile(fo, path);
             if (res != null) {
+                return openFile(res, openInEditor);
+            }
+        }
+        return null;
+    }
+
+    private Document openFile(FileObject res, boolean openInEditor) {
+        try {
+            if (openInEditor) {
+                DataObject dobj = DataObject.find(res);
+                openDataObject(dobj);
+            }
+            CloneableEditorSupport ces = PPWhereUsedQueryPlugin.getEditorSupport(res);
+            if (ces != null) {
                 try {
-                    if (openInEditor) {
-                        DataObject dobj = DataObject.find(res);
-                        openDataObject(dobj);
-                    }
-                    CloneableEditorSupport ces = PPWhereUsedQueryPlugin.getEditorSupport(res);
-                    if (ces != null) {
-                        try {
-                            return ces.openDocument();
-                        } catch (IOException ex) {
-                            Exceptions.printStackTrace(ex);
-                        }
-                    }
-                } catch (DataObjectNotFoundException ex) {
+                    return ces.openDocument();
+                } catch (IOException ex) {
                     Exceptions.printStackTrace(ex);
                 }
             }
+        } catch (DataObjectNotFoundException ex) {
+            Exceptions.printStackTrace(ex);
         }
         return null;
     }
@@ -340,6 +580,19 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
         return null;
     }
     
+    /**
+     * @param value variable reference, eg. {@code $aaa::params::var}
+     * @return name of the class owning the variable or null for unqualified variables
+     */
+    String getClassName(String value) {
+        String path = value.replace("$", "").replace("{", "").replace("}", "");
+        int sep = path.lastIndexOf("::");
+        if (sep <= 0) {
+            return null;
+        }
+        return path.substring(0, sep);
+    }
+
     /**
      * 
      * @param path first is path, second variable name
@@ -374,16 +627,97 @@ public class PHyperlinkProvider implements HyperlinkProviderExt {
         return Pair.of(null, "$" + path);
     }
     
-    private final class Tuple {
+    static final class Tuple {
         final String value;
         final int tokenOffset;
         final int associatedType;
 
-        private Tuple(String value, int type, int offset)
+        Tuple(String value, int type, int offset)
         {
             this.value = value;
             this.associatedType = type;
             this.tokenOffset = offset;
         }
     }
+
+    /**
+     * resolved hyperlink targets of one document, stored as document property and cleared on each edit.
+     */
+    static final class TupleCache implements DocumentListener {
+        /**
+         * marks offsets known not to be hyperlinks
+         */
+        static final Tuple NONE = new Tuple("", 0, -1);
+        private static final int MAX_ENTRIES = 64;
+
+        private final List<Tuple> hits = new ArrayList<>();
+        private final Set<Integer> misses = new HashSet<>();
+        private int version;
+
+        static TupleCache get(Document doc) {
+            synchronized (TupleCache.class) {
+                TupleCache cache = (TupleCache) doc.getProperty(TupleCache.class);
+                if (cache == null) {
+                    cache = new TupleCache();
+                    doc.putProperty(TupleCache.class, cache);
+                    doc.addDocumentListener(cache);
+                }
+                return cache;
+            }
+        }
+
+        synchronized int getVersion() {
+            return version;
+        }
+
+        /**
+         * @return cached target spanning the offset, {@link #NONE} for a known miss or null if not resolved yet
+         */
+        synchronized Tuple find(int offset) {
+            for (Tuple tup : hits) {
+                if (offset >= tup.tokenOffset && offset < tup.tokenOffset + tup.value.length()) {
+                    return tup;
+                }
+            }
+            return misses.contains(offset) ? NONE : null;
+        }
+
+        /**
+         * @param resolvedVersion version the tuple was resolved against, stale results are dropped
+         */
+        synchronized void put(int resolvedVersion, int offset, Tuple tup) {
+            if (resolvedVersion != version) {
+                return;
+            }
+            if (hits.size() + misses.size() >= MAX_ENTRIES) {
+                hits.clear();
+                misses.clear();
+            }
+            if (tup == NONE) {
+                misses.add(offset);
+            } else {
+                hits.add(tup);
+            }
+        }
+
+        private synchronized void clear() {
+            version++;
+            hits.clear();
+            misses.clear();
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            clear();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            clear();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
+    }
 }
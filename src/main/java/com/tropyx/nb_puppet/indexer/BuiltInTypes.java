@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import com.tropyx.nb_puppet.parser.PClassParam;
+import com.tropyx.nb_puppet.parser.PDefine;
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * built-in resource types (file, exec, package, ...) and their required parameters, read from a compact
+ * binary index generated at build time from the src/main/puppet42 stubs, see {@link #main(java.lang.String[])}.
+ * Nothing is scanned or indexed at runtime.
+ */
+public final class BuiltInTypes {
+    static final String RESOURCE = "builtin-types.bin";
+    private static final int FORMAT = 0x50503432; //PP42
+
+    private static final Logger LOG = Logger.getLogger(BuiltInTypes.class.getName());
+    private static BuiltInTypes instance;
+
+    /**
+     * type name to type, sorted for prefix lookups
+     */
+    private final TreeMap<String, Type> types;
+
+    BuiltInTypes(TreeMap<String, Type> types) {
+        this.types = types;
+    }
+
+    public static synchronized BuiltInTypes getDefault() {
+        if (instance == null) {
+            TreeMap<String, Type> types = new TreeMap<>();
+            InputStream in = BuiltInTypes.class.getResourceAsStream(RESOURCE);
+            if (in == null) {
+                LOG.log(Level.WARNING, "{0} missing, built-in types not available", RESOURCE);
+            } else {
+                try {
+                    types = read(in);
+                } catch (IOException ex) {
+                    LOG.log(Level.WARNING, null, ex);
+                }
+            }
+            instance = new BuiltInTypes(types);
+        }
+        return instance;
+    }
+
+    /**
+     * @return types with names starting with prefix, sorted by name
+     */
+    public Collection<Type> getTypes(String prefix) {
+        return Collections.unmodifiableCollection(types.subMap(prefix, prefix + Character.MAX_VALUE).values());
+    }
+
+    /**
+     * @return null if not a built-in type
+     */
+    public Type getType(String name) {
+        return types.get(name);
+    }
+
+    static TreeMap<String, Type> read(InputStream stream) throws IOException {
+        TreeMap<String, Type> types = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != FORMAT) {
+                throw new IOException("Not a built-in types index");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                types.put(name, new Type(name, readStrings(in)));
+            }
+        }
+        return types;
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] values = new String[in.readShort()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    static void write(Collection<Type> types, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(FORMAT);
+        out.writeInt(types.size());
+        for (Type type : types) {
+            out.writeUTF(type.getName());
+            writeStrings(out, type.getRequiredParams());
+        }
+        out.flush();
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeShort(values.length);
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * parses the define stubs, the same way {@link PPIndexer} would index them.
+     * @param dir folder with the .pp stubs
+     */
+    static Map<String, Type> parse(Path dir) throws IOException {
+        Map<String, Type> types = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.pp")) {
+            for (Path file : files) {
+                for (PDefine def : PuppetSourceParser.parse(file).getChildrenOfType(PDefine.class, false)) {
+                    List<String> reqParams = new ArrayList<>();
+                    for (PClassParam param : def.getParams()) {
+                        if (param.getDefaultValue() == null) {
+                            reqParams.add(param.getVariable().substring(1));
+                        }
+                    }
+                    types.put(def.getName(), new Type(def.getName(), reqParams.toArray(new String[0])));
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * build time generator, run by the exec-maven-plugin in the process-classes phase.
+     * @param args folder with the stubs, output file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: BuiltInTypes <stubs dir> <output file>");
+        }
+        Map<String, Type> types = parse(Paths.get(args[0]));
+        Path output = Paths.get(args[1]);
+        Files.createDirectories(output.getParent());
+        try (OutputStream out = Files.newOutputStream(output)) {
+            write(types.values(), out);
+        }
+    }
+
+    public static final class Type {
+        private final String name;
+        private final String[] reqParams;
+
+        Type(String name, String[] reqParams) {
+            this.name = name;
+            this.reqParams = reqParams;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return parameters without a default value
+         */
+        public String[] getRequiredParams() {
+            return reqParams;
+        }
+    }
+}
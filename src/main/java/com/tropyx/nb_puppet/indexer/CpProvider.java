@@ -18,16 +18,26 @@
 package com.tropyx.nb_puppet.indexer;
 
 import com.tropyx.nb_puppet.PPConstants;
-import java.io.File;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import org.netbeans.api.java.classpath.ClassPath;
 import org.netbeans.api.project.Project;
+import org.netbeans.spi.java.classpath.ClassPathFactory;
+import org.netbeans.spi.java.classpath.ClassPathImplementation;
 import org.netbeans.spi.java.classpath.ClassPathProvider;
+import org.netbeans.spi.java.classpath.PathResourceImplementation;
 import org.netbeans.spi.java.classpath.support.ClassPathSupport;
 import org.netbeans.spi.project.ProjectServiceProvider;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileChangeListener;
+import org.openide.filesystems.FileEvent;
 import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
 import org.openide.filesystems.FileUtil;
-import org.openide.modules.InstalledFileLocator;
 
 @ProjectServiceProvider(service = ClassPathProvider.class, projectType = PPConstants.PUPPET_PROJECT_TYPE)
 public class CpProvider implements ClassPathProvider {
@@ -44,20 +54,110 @@ public class CpProvider implements ClassPathProvider {
         if (ClassPath.SOURCE.equals(type)) {
             ClassPath cp = CP.get();
             if (cp == null) {
-                FileObject fo = project.getProjectDirectory().getFileObject("manifests");
-                if (fo != null) {
-                    CP.compareAndSet(null, ClassPathSupport.createClassPath(fo, getBootstrapPuppet()));
-                    cp = CP.get();
-                }
+                CP.compareAndSet(null, ClassPathFactory.createClassPath(new SourceRoots(project)));
+                cp = CP.get();
             }
             return cp;
         }
         return ClassPath.EMPTY;
     }
 
-    FileObject getBootstrapPuppet()  {
-        File f = InstalledFileLocator.getDefault().locate("modules/puppet42", "com.tropyx.nb_puppet", false);
-        return FileUtil.toFileObject(f);
+    /**
+     * @return manifests, hiera data, indexed by HieraIndexer, and ruby types and functions,
+     * indexed by RubyLibIndexer, the folders that exist
+     */
+    static List<FileObject> findRoots(Project project) {
+        FileObject dir = project.getProjectDirectory();
+        List<FileObject> roots = new ArrayList<>();
+        FileObject fo = dir.getFileObject("manifests");
+        if (fo != null && fo.isFolder()) {
+            roots.add(fo);
+        }
+        roots.addAll(HieraIndexer.findDataFolders(project));
+        FileObject lib = dir.getFileObject(RubyLibIndexer.LIB_FOLDER);
+        if (lib != null && lib.isFolder()) {
+            roots.add(lib);
+        }
+        //built-in types are not a source root anymore, see BuiltInTypes
+        return roots;
+    }
+
+    /**
+     * source roots of the project, recomputed when folders or the hiera configuration
+     * in the project directory change.
+     */
+    static final class SourceRoots implements ClassPathImplementation {
+        private final Project project;
+        private final PropertyChangeSupport support = new PropertyChangeSupport(this);
+        private List<FileObject> roots;
+        private List<PathResourceImplementation> resources;
+
+        private final FileChangeListener listener = new FileChangeAdapter() {
+
+            @Override
+            public void fileFolderCreated(FileEvent fe) {
+                refresh();
+            }
+
+            @Override
+            public void fileDataCreated(FileEvent fe) {
+                refresh();
+            }
+
+            @Override
+            public void fileChanged(FileEvent fe) {
+                refresh();
+            }
+
+            @Override
+            public void fileDeleted(FileEvent fe) {
+                refresh();
+            }
+
+            @Override
+            public void fileRenamed(FileRenameEvent fe) {
+                refresh();
+            }
+        };
+
+        SourceRoots(Project project) {
+            this.project = project;
+            FileObject dir = project.getProjectDirectory();
+            dir.addFileChangeListener(FileUtil.weakFileChangeListener(listener, dir));
+        }
+
+        @Override
+        public synchronized List<? extends PathResourceImplementation> getResources() {
+            if (resources == null) {
+                roots = findRoots(project);
+                List<PathResourceImplementation> list = new ArrayList<>();
+                for (FileObject root : roots) {
+                    list.add(ClassPathSupport.createResource(root.toURL()));
+                }
+                resources = Collections.unmodifiableList(list);
+            }
+            return resources;
+        }
+
+        private void refresh() {
+            synchronized (this) {
+                if (resources == null || findRoots(project).equals(roots)) {
+                    return;
+                }
+                resources = null;
+            }
+            support.firePropertyChange(PROP_RESOURCES, null, null);
+        }
+
+        @Override
+        public void addPropertyChangeListener(PropertyChangeListener listener) {
+            support.addPropertyChangeListener(listener);
+        }
+
+        @Override
+        public void removePropertyChangeListener(PropertyChangeListener listener) {
+            support.removePropertyChangeListener(listener);
+        }
     }
 
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import com.tropyx.nb_puppet.hiera.HieraPanel;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.api.project.FileOwnerQuery;
+import org.netbeans.api.project.Project;
+import org.netbeans.modules.parsing.spi.indexing.Context;
+import org.netbeans.modules.parsing.spi.indexing.CustomIndexer;
+import org.netbeans.modules.parsing.spi.indexing.Indexable;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexDocument;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexingSupport;
+import org.netbeans.spi.project.AuxiliaryProperties;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.filesystems.URLMapper;
+
+/**
+ * indexes top level keys of hiera yaml files in the data folders of a project, as configured
+ * by its hiera.yaml.
+ */
+public class HieraIndexer extends CustomIndexer {
+    /**
+     * hiera key, stored searchable
+     */
+    public static final String FLD_KEY = "hierakey";
+    /**
+     * stored only, {@code key:offset} for each FLD_KEY value
+     */
+    public static final String FLD_KEY_OFFSET = "hierakeyoffset";
+    /**
+     * hierarchy level of the file, path relative to the data folder without extension, eg. {@code nodes/web01}
+     */
+    public static final String FLD_LEVEL = "hieralevel";
+
+    /**
+     * project folders holding hiera data when there is no hiera configuration,
+     * control repository (hiera 3) and module (hiera 5) layouts
+     */
+    public static final List<String> DATA_FOLDERS = Arrays.asList("hieradata", "data");
+
+    /**
+     * default location of the hiera configuration, relative to the project directory
+     */
+    public static final String HIERA_CONFIG = "hiera.yaml";
+
+    /**
+     * datadir of hiera 5 when the configuration doesn't set one
+     */
+    private static final String DEFAULT_DATADIR = "data";
+
+    private static final List<String> EXTENSIONS = Arrays.asList("yaml", "yml", "eyaml");
+
+    private static final Logger LOG = Logger.getLogger(HieraIndexer.class.getName());
+
+    @Override
+    protected void index(Iterable<? extends Indexable> files, Context context) {
+        FileObject root = context.getRoot();
+        if (root == null) {
+            return;
+        }
+        Project owner = FileOwnerQuery.getOwner(root);
+        if (owner == null || !findDataFolders(owner).contains(root)) {
+            return;
+        }
+        IndexingSupport support;
+        try {
+            support = IndexingSupport.getInstance(context);
+        } catch (IOException ioe) {
+            LOG.log(Level.WARNING, null, ioe);
+            return;
+        }
+        for (Indexable indexable : files) {
+            String path = indexable.getRelativePath();
+            int dot = path.lastIndexOf('.');
+            if (dot == -1 || !EXTENSIONS.contains(path.substring(dot + 1))) {
+                continue;
+            }
+            FileObject fo = URLMapper.findFileObject(indexable.getURL());
+            if (fo == null) {
+                continue;
+            }
+            Map<String, Integer> keys;
+            try (Reader reader = new BufferedReader(new InputStreamReader(fo.getInputStream(), StandardCharsets.UTF_8))) {
+                keys = findKeys(reader);
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, null, ex);
+                continue;
+            }
+            support.removeDocuments(indexable);
+            IndexDocument document = support.createDocument(indexable);
+            document.addPair(FLD_LEVEL, path.substring(0, dot), true, true);
+            for (Map.Entry<String, Integer> key : keys.entrySet()) {
+                document.addPair(FLD_KEY, key.getKey(), true, true);
+                document.addPair(FLD_KEY_OFFSET, key.getKey() + ":" + key.getValue(), false, true);
+            }
+            support.addDocument(document);
+        }
+    }
+
+    /**
+     * @return existing folders of the project holding hiera data, see {@link #findDataFolders(FileObject, String)}
+     */
+    public static List<FileObject> findDataFolders(Project project) {
+        AuxiliaryProperties props = project.getLookup().lookup(AuxiliaryProperties.class);
+        String config = props != null ? props.get(HieraPanel.HIERALOCATION, true) : null;
+        return findDataFolders(project.getProjectDirectory(), config);
+    }
+
+    /**
+     * @param config hiera configuration, absolute or relative to the project directory, null for {@link #HIERA_CONFIG}
+     * @return existing folders holding hiera data, the datadirs of the configuration when there is one,
+     * otherwise the {@link #DATA_FOLDERS} of the project
+     */
+    public static List<FileObject> findDataFolders(FileObject projectDir, String config) {
+        List<FileObject> folders = new ArrayList<>();
+        if (config == null || config.trim().isEmpty()) {
+            config = HIERA_CONFIG;
+        }
+        FileObject configFile = new File(config).isAbsolute()
+                ? FileUtil.toFileObject(FileUtil.normalizeFile(new File(config)))
+                : projectDir.getFileObject(config.trim());
+        if (configFile != null && configFile.isData()) {
+            List<String> datadirs;
+            try (Reader reader = new BufferedReader(new InputStreamReader(configFile.getInputStream(), StandardCharsets.UTF_8))) {
+                datadirs = findDatadirs(reader);
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, null, ex);
+                datadirs = Collections.emptyList();
+            }
+            if (datadirs.isEmpty()) {
+                datadirs = Collections.singletonList(DEFAULT_DATADIR);
+            }
+            for (String datadir : datadirs) {
+                FileObject folder = resolveDatadir(configFile.getParent(), datadir);
+                if (folder != null && folder.isFolder() && !folders.contains(folder)) {
+                    folders.add(folder);
+                }
+            }
+        } else {
+            for (String name : DATA_FOLDERS) {
+                FileObject folder = projectDir.getFileObject(name);
+                if (folder != null && folder.isFolder()) {
+                    folders.add(folder);
+                }
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * @return values of the hiera 5 {@code datadir} and hiera 3 {@code :datadir} settings, in file order
+     */
+    static List<String> findDatadirs(Reader reader) throws IOException {
+        List<String> datadirs = new ArrayList<>();
+        LineReader lines = new LineReader(reader);
+        String line;
+        while ((line = lines.next()) != null) {
+            String trimmed = line.trim();
+            String value;
+            if (trimmed.startsWith("datadir:")) {
+                value = trimmed.substring("datadir:".length()).trim();
+            } else if (trimmed.startsWith(":datadir:")) {
+                value = trimmed.substring(":datadir:".length()).trim();
+            } else {
+                continue;
+            }
+            if (value.length() > 1 && (value.charAt(0) == '\'' || value.charAt(0) == '"') && value.charAt(value.length() - 1) == value.charAt(0)) {
+                value = value.substring(1, value.length() - 1);
+            }
+            if (!value.isEmpty() && !datadirs.contains(value)) {
+                datadirs.add(value);
+            }
+        }
+        return datadirs;
+    }
+
+    private static FileObject resolveDatadir(FileObject base, String datadir) {
+        int interpolation = datadir.lastIndexOf('}');
+        if (interpolation != -1) {
+            //eg. /etc/puppetlabs/code/environments/%{environment}/hieradata, the part after the
+            //environment is relative to the checked out environment
+            datadir = datadir.substring(interpolation + 1);
+            while (datadir.startsWith("/")) {
+                datadir = datadir.substring(1);
+            }
+            return datadir.isEmpty() ? null : base.getFileObject(datadir);
+        }
+        if (new File(datadir).isAbsolute()) {
+            return FileUtil.toFileObject(FileUtil.normalizeFile(new File(datadir)));
+        }
+        return base.getFileObject(datadir);
+    }
+
+    /**
+     * hiera data lookup functions, the first string argument is a key.
+     */
+    public static boolean isLookupFunction(String name) {
+        return "lookup".equals(name) || name.startsWith("hiera");
+    }
+
+    /**
+     * scans the top level mapping keys line by line, without building a yaml tree.
+     * Offsets count line breaks as a single character, like editor documents do.
+     * @return key to offset of its first character, in file order, first occurrence wins
+     */
+    public static Map<String, Integer> findKeys(Reader reader) throws IOException {
+        Map<String, Integer> keys = new LinkedHashMap<>();
+        LineReader lines = new LineReader(reader);
+        String line;
+        while ((line = lines.next()) != null) {
+            addKey(line, lines.lineStart(), keys);
+        }
+        return keys;
+    }
+
+    private static void addKey(String line, int lineStart, Map<String, Integer> keys) {
+        if (line.length() == 0) {
+            return;
+        }
+        char first = line.charAt(0);
+        if (Character.isWhitespace(first) || first == '#' || first == '-' || first == '.' || first == '%') {
+            //nested value, comment, list item, document markers or directives
+            return;
+        }
+        String key = null;
+        int keyStart = lineStart;
+        if (first == '\'' || first == '"') {
+            int end = line.indexOf(first, 1);
+            if (end != -1 && end + 1 < line.length() && line.charAt(end + 1) == ':') {
+                key = line.substring(1, end);
+                keyStart++;
+            }
+        } else {
+            //keys like profile::base::packages contain colons, the separator is followed by space or line end
+            for (int i = 0; i < line.length(); i++) {
+                if (line.charAt(i) == ':' && (i + 1 == line.length() || line.charAt(i + 1) == ' ' || line.charAt(i + 1) == '\t')) {
+                    key = line.substring(0, i).trim();
+                    break;
+                }
+            }
+        }
+        if (key != null && !key.isEmpty() && !keys.containsKey(key)) {
+            keys.put(key, keyStart);
+        }
+    }
+}
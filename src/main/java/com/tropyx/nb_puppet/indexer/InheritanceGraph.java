@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexResult;
+import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Class inheritance of all indexed roots derived from {@link PPIndexer#FLD_INHERIT}, so that
+ * ancestors or descendants of a class are known without following {@code inherits} one
+ * index query at a time. A root is loaded with a single query on first use, afterwards
+ * {@link PPIndexer} keeps it current file by file.
+ */
+public final class InheritanceGraph {
+
+    private static final InheritanceGraph INSTANCE = new InheritanceGraph();
+
+    /**
+     * root -> file -> class -> parent class
+     */
+    private final Map<URL, Map<URL, Map<String, String>>> edges = new HashMap<>();
+    /**
+     * root being queried -> file -> class -> parent class reindexed meanwhile, empty when the file was removed
+     */
+    private final Map<URL, Map<URL, Map<String, String>>> loading = new HashMap<>();
+    private Map<String, String> parents;
+    private Map<String, List<String>> children;
+    private final Map<String, List<String>> ancestors = new HashMap<>();
+    private final Map<String, Set<String>> descendants = new HashMap<>();
+    /**
+     * last result of {@link #forRoots}, dropped on any change
+     */
+    private InheritanceGraph view;
+    private Set<URL> viewRoots;
+
+    InheritanceGraph() {
+    }
+
+    public static InheritanceGraph getDefault() {
+        return INSTANCE;
+    }
+
+    /**
+     * loads the roots not known yet, one index query for all of them.
+     * @param roots source roots to answer queries for
+     */
+    public void ensureLoaded(Collection<FileObject> roots) throws IOException {
+        List<FileObject> missing = new ArrayList<>();
+        synchronized (this) {
+            for (FileObject root : roots) {
+                if (startLoading(root.toURL())) {
+                    missing.add(root);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<URL, Map<URL, Map<String, String>>> loaded = new HashMap<>();
+        for (FileObject root : missing) {
+            loaded.put(root.toURL(), new HashMap<URL, Map<String, String>>());
+        }
+        boolean done = false;
+        try {
+            query(missing, loaded);
+            done = true;
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    loading.keySet().removeAll(loaded.keySet());
+                }
+            }
+        }
+        for (Map.Entry<URL, Map<URL, Map<String, String>>> e : loaded.entrySet()) {
+            addRoot(e.getKey(), e.getValue());
+        }
+    }
+
+    private static void query(List<FileObject> missing, Map<URL, Map<URL, Map<String, String>>> loaded) throws IOException {
+        QuerySupport qs = QuerySupport.forRoots(PPIndexerFactory.INDEXER_TYPE, PPIndexerFactory.INDEXER_VERSION, missing.toArray(new FileObject[0]));
+        for (IndexResult r : qs.query(PPIndexer.FLD_INHERIT, "", QuerySupport.Kind.PREFIX, PPIndexer.FLD_ROOT, PPIndexer.FLD_INHERIT)) {
+            String clazz = r.getValue(PPIndexer.FLD_ROOT);
+            String parent = r.getValue(PPIndexer.FLD_INHERIT);
+            Map<URL, Map<String, String>> files = r.getRoot() != null ? loaded.get(r.getRoot()) : null;
+            if (clazz == null || parent == null || files == null) {
+                continue;
+            }
+            Map<String, String> fileEdges = files.get(r.getUrl());
+            if (fileEdges == null) {
+                fileEdges = new HashMap<>();
+                files.put(r.getUrl(), fileEdges);
+            }
+            fileEdges.put(clazz, parent);
+        }
+    }
+
+    /**
+     * marks a root as being loaded, from now on its updates are queued until {@link #addRoot}.
+     * @return false when the root is loaded already
+     */
+    synchronized boolean startLoading(URL root) {
+        if (edges.containsKey(root)) {
+            return false;
+        }
+        if (!loading.containsKey(root)) {
+            loading.put(root, new HashMap<URL, Map<String, String>>());
+        }
+        return true;
+    }
+
+    /**
+     * @param files file -> class -> parent class, as read from the index,
+     * updates queued since {@link #startLoading} are applied on top
+     */
+    synchronized void addRoot(URL root, Map<URL, Map<String, String>> files) {
+        Map<URL, Map<String, String>> queued = loading.remove(root);
+        if (!edges.containsKey(root)) {
+            if (queued != null) {
+                for (Map.Entry<URL, Map<String, String>> e : queued.entrySet()) {
+                    if (e.getValue().isEmpty()) {
+                        files.remove(e.getKey());
+                    } else {
+                        files.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            edges.put(root, files);
+            invalidate();
+        }
+    }
+
+    /**
+     * replaces the inheritance declared by a reindexed file, queued for roots being loaded
+     * and ignored for roots not loaded at all.
+     * @param fileEdges class -> parent class
+     */
+    synchronized void update(URL root, URL file, Map<String, String> fileEdges) {
+        Map<URL, Map<String, String>> files = edges.get(root);
+        if (files == null) {
+            Map<URL, Map<String, String>> queued = loading.get(root);
+            if (queued != null) {
+                queued.put(file, fileEdges);
+            }
+            return;
+        }
+        Map<String, String> old = fileEdges.isEmpty() ? files.remove(file) : files.put(file, fileEdges);
+        if (!fileEdges.equals(old == null ? Collections.<String, String>emptyMap() : old)) {
+            invalidate();
+        }
+    }
+
+    synchronized void remove(URL root, URL file) {
+        Map<URL, Map<String, String>> files = edges.get(root);
+        if (files != null && files.remove(file) != null) {
+            invalidate();
+        }
+        Map<URL, Map<String, String>> queued = loading.get(root);
+        if (queued != null) {
+            queued.put(file, Collections.<String, String>emptyMap());
+        }
+    }
+
+    synchronized void removeRoot(URL root) {
+        loading.remove(root);
+        if (edges.remove(root) != null) {
+            invalidate();
+        }
+    }
+
+    /**
+     * @return snapshot of the inheritance declared in the given roots only, later changes
+     * are not reflected. Roots not loaded contribute nothing.
+     */
+    public synchronized InheritanceGraph forRoots(Collection<URL> roots) {
+        Set<URL> rootSet = new HashSet<>(roots);
+        if (view == null || !rootSet.equals(viewRoots)) {
+            InheritanceGraph snapshot = new InheritanceGraph();
+            for (URL root : rootSet) {
+                Map<URL, Map<String, String>> files = edges.get(root);
+                if (files != null) {
+                    //file maps are replaced, not modified, copying the root map is enough
+                    snapshot.edges.put(root, new HashMap<>(files));
+                }
+            }
+            view = snapshot;
+            viewRoots = rootSet;
+        }
+        return view;
+    }
+
+    /**
+     * @return all classes the given class inherits from, nearest first
+     */
+    public synchronized List<String> getAncestors(String clazz) {
+        List<String> result = ancestors.get(clazz);
+        if (result == null) {
+            Set<String> chain = new LinkedHashSet<>();
+            String parent = parents().get(clazz);
+            //cycles are invalid puppet but must not hang us
+            while (parent != null && !parent.equals(clazz) && chain.add(parent)) {
+                parent = parents().get(parent);
+            }
+            result = Collections.unmodifiableList(new ArrayList<>(chain));
+            ancestors.put(clazz, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return all classes inheriting from the given class, directly or not
+     */
+    public synchronized Set<String> getDescendants(String clazz) {
+        Set<String> result = descendants.get(clazz);
+        if (result == null) {
+            Set<String> found = new LinkedHashSet<>();
+            List<String> queue = new ArrayList<>();
+            queue.add(clazz);
+            for (int i = 0; i < queue.size(); i++) {
+                List<String> direct = children().get(queue.get(i));
+                if (direct != null) {
+                    for (String ch : direct) {
+                        if (!ch.equals(clazz) && found.add(ch)) {
+                            queue.add(ch);
+                        }
+                    }
+                }
+            }
+            result = Collections.unmodifiableSet(found);
+            descendants.put(clazz, result);
+        }
+        return result;
+    }
+
+    private void invalidate() {
+        parents = null;
+        children = null;
+        ancestors.clear();
+        descendants.clear();
+        view = null;
+        viewRoots = null;
+    }
+
+    private Map<String, String> parents() {
+        if (parents == null) {
+            buildMaps();
+        }
+        return parents;
+    }
+
+    private Map<String, List<String>> children() {
+        if (children == null) {
+            buildMaps();
+        }
+        return children;
+    }
+
+    private void buildMaps() {
+        parents = new HashMap<>();
+        children = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (Map<URL, Map<String, String>> files : edges.values()) {
+            for (Map<String, String> fileEdges : files.values()) {
+                for (Map.Entry<String, String> e : fileEdges.entrySet()) {
+                    //same class in several checkouts, first one wins
+                    if (!seen.add(e.getKey())) {
+                        continue;
+                    }
+                    parents.put(e.getKey(), e.getValue());
+                    List<String> list = children.get(e.getValue());
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        children.put(e.getValue(), list);
+                    }
+                    list.add(e.getKey());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * reads lines and tracks their offsets, line breaks count as a single character like in editor documents.
+ */
+final class LineReader {
+    private final Reader reader;
+    private final StringBuilder line = new StringBuilder();
+    private int offset;
+    private int lineStart;
+    private boolean eof;
+    /**
+     * last line ended with \r, a \n following it belongs to the same line break
+     */
+    private boolean afterCr;
+
+    LineReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return next line without the line break or null at the end of input
+     */
+    String next() throws IOException {
+        if (eof) {
+            return null;
+        }
+        line.setLength(0);
+        lineStart = offset;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == '\n' && afterCr) {
+                afterCr = false;
+                continue;
+            }
+            afterCr = c == '\r';
+            //\r\n, \n and a lone \r all end a line, like PuppetSourceParser.normalizeLineSeparators
+            if (c == '\n' || c == '\r') {
+                offset++;
+                return line.toString();
+            }
+            line.append((char) c);
+            offset++;
+        }
+        eof = true;
+        return line.toString();
+    }
+
+    /**
+     * @return offset of the first character of the line last returned by {@link #next()}
+     */
+    int lineStart() {
+        return lineStart;
+    }
+}
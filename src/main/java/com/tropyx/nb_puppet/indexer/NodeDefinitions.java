@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexResult;
+import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport;
+import org.openide.filesystems.FileObject;
+
+/**
+ * answers which node definition applies to a host and which classes it includes, from the index.
+ * Follows puppet's node matching: exact name, then regexes, then the same again with the last
+ * domain segment removed, and {@code default} only when no shorter name matches either.
+ */
+public final class NodeDefinitions {
+    private static final String DEFAULT = "default";
+    private static final int MAX_PATTERNS = 500;
+    /**
+     * compiled node regexes, shared across queries. Invalid ones map to {@link #INVALID}.
+     */
+    private static final Map<String, Pattern> PATTERNS = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > MAX_PATTERNS;
+        }
+    };
+    private static final Pattern INVALID = Pattern.compile("(?!)");
+
+    private NodeDefinitions() {
+    }
+
+    /**
+     * @param qs query support of {@link PPIndexerFactory}
+     * @param hostname fully qualified or short host name
+     * @return matching node definition or null when no node, not even default, matches
+     */
+    public static Node findNode(QuerySupport qs, String hostname) throws IOException {
+        Map<String, IndexResult> nodes = new LinkedHashMap<>();
+        for (IndexResult res : qs.query(PPIndexer.FLD_NODE, "", QuerySupport.Kind.PREFIX, PPIndexer.FLD_NODE, PPIndexer.FLD_NODE_CLASS)) {
+            for (String name : res.getValues(PPIndexer.FLD_NODE)) {
+                if (!nodes.containsKey(name)) {
+                    nodes.put(name, res);
+                }
+            }
+        }
+        String name = select(nodes.keySet(), hostname);
+        if (name == null) {
+            return null;
+        }
+        IndexResult res = nodes.get(name);
+        return new Node(name, res.getFile(), Arrays.asList(res.getValues(PPIndexer.FLD_NODE_CLASS)));
+    }
+
+    /**
+     * picks the node name applying to the host.
+     * @param names node names as indexed, regexes as {@code /regex/}
+     * @return null if none matches
+     */
+    static String select(Collection<String> names, String hostname) {
+        String host = hostname.toLowerCase(Locale.ENGLISH);
+        for (String candidate = host; !candidate.isEmpty(); candidate = candidate.substring(0, Math.max(0, candidate.lastIndexOf('.')))) {
+            for (String name : names) {
+                if (!isRegex(name) && name.toLowerCase(Locale.ENGLISH).equals(candidate)) {
+                    return name;
+                }
+            }
+            for (String name : names) {
+                if (isRegex(name) && getPattern(name).matcher(candidate).find()) {
+                    return name;
+                }
+            }
+        }
+        return names.contains(DEFAULT) ? DEFAULT : null;
+    }
+
+    private static boolean isRegex(String name) {
+        return name.length() >= 2 && name.startsWith("/") && name.endsWith("/");
+    }
+
+    private static Pattern getPattern(String regex) {
+        synchronized (PATTERNS) {
+            Pattern pattern = PATTERNS.get(regex);
+            if (pattern == null) {
+                try {
+                    pattern = Pattern.compile(regex.substring(1, regex.length() - 1));
+                } catch (PatternSyntaxException ex) {
+                    pattern = INVALID;
+                }
+                PATTERNS.put(regex, pattern);
+            }
+            return pattern;
+        }
+    }
+
+    public static final class Node {
+        private final String name;
+        private final FileObject file;
+        private final List<String> classes;
+
+        Node(String name, FileObject file, List<String> classes) {
+            this.name = name;
+            this.file = file;
+            this.classes = Collections.unmodifiableList(classes);
+        }
+
+        /**
+         * @return name or {@code /regex/} of the node definition that matched
+         */
+        public String getName() {
+            return name;
+        }
+
+        public FileObject getFile() {
+            return file;
+        }
+
+        /**
+         * @return classes included in the node body
+         */
+        public List<String> getClasses() {
+            return classes;
+        }
+    }
+}
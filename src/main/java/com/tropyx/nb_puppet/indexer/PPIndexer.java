@@ -23,15 +23,22 @@ import com.tropyx.nb_puppet.parser.PClassRef;
 import com.tropyx.nb_puppet.parser.PDefine;
 import com.tropyx.nb_puppet.parser.PElement;
 import com.tropyx.nb_puppet.parser.PFunction;
+import com.tropyx.nb_puppet.parser.PNode;
 import com.tropyx.nb_puppet.parser.PParamContainer;
 import com.tropyx.nb_puppet.parser.PResource;
+import com.tropyx.nb_puppet.parser.PString;
 import com.tropyx.nb_puppet.parser.PVariable;
 import com.tropyx.nb_puppet.parser.PVariableDefinition;
 import com.tropyx.nb_puppet.parser.PuppetParserResult;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,6 +47,7 @@ import org.netbeans.modules.parsing.spi.indexing.Context;
 import org.netbeans.modules.parsing.spi.indexing.EmbeddingIndexer;
 import org.netbeans.modules.parsing.spi.indexing.Indexable;
 import org.netbeans.modules.parsing.spi.indexing.support.IndexDocument;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexResult;
 import org.netbeans.modules.parsing.spi.indexing.support.IndexingSupport;
 
 public class PPIndexer extends EmbeddingIndexer {
@@ -51,28 +59,53 @@ public class PPIndexer extends EmbeddingIndexer {
     public static final String FLD_CLASSREF = "classref";
     public static final String FLD_FUNCTION = "function";
     /**
-     * root class or define name, stored searcheable
+     * class or define name of the document, stored searcheable.
+     * Node documents store their first node name, not searchable so that class and define lookups don't find nodes
      */
     public static final String FLD_ROOT = "root";
     /**
-     * class name if file is class, searchable only -> stored is FLD_ROOT
+     * class name if document is class, searchable only -> stored is FLD_ROOT
      */
     public static final String FLD_CLASS = "class";
     /**
-     * define name if file is define, searchable only -> stored is FLD_ROOT
+     * define name if document is define, searchable only -> stored is FLD_ROOT
      */
     public static final String FLD_DEFINE = "define";
     public static final String FLD_RESOURCE = "resource";
+    /**
+     * stored only, {@code name:offset} of the class or define name, parallel to FLD_ROOT
+     */
+    public static final String FLD_ROOT_OFFSET = "rootoffset";
+    /**
+     * stored only, {@code name:offset} of the first definition of each FLD_VAR value
+     */
+    public static final String FLD_VAR_OFFSET = "varoffset";
+    /**
+     * {@code type[title]} of resources declared with literal titles outside of if/unless/case, stored searchable
+     */
+    public static final String FLD_RESOURCE_DECL = "resourcedecl";
+    /**
+     * stored only, {@code type[title]:offset} for each FLD_RESOURCE_DECL value
+     */
+    public static final String FLD_RESOURCE_DECL_OFFSET = "resourcedecloffset";
+    /**
+     * node name if document is node, quotes stripped, regexes kept as {@code /regex/}, stored searchable
+     */
+    public static final String FLD_NODE = "node";
+    /**
+     * stored only, classes included in the node body, in source order
+     */
+    public static final String FLD_NODE_CLASS = "nodeclass";
     
     private static final Logger LOG = Logger.getLogger(PPIndexer.class.getName());
 
     @Override
-    protected void index(Indexable indexable, Parser.Result parserResult, Context context) {
+    protected void index(final Indexable indexable, Parser.Result parserResult, Context context) {
         if (!(parserResult instanceof PuppetParserResult)) {
             return;
         }
 
-        IndexingSupport support;
+        final IndexingSupport support;
         try {
             support = IndexingSupport.getInstance(context);
         } catch (IOException ioe) {
@@ -82,17 +115,76 @@ public class PPIndexer extends EmbeddingIndexer {
         // we need to remove old documents (document per object, not file)
         support.removeDocuments(indexable);
 
-        IndexDocument document = support.createDocument(indexable);
+        final List<IndexDocument> documents = new ArrayList<>();
         PuppetParserResult res = (PuppetParserResult) parserResult;
-        PElement root = res.getRootNode();
+        buildDocuments(res.getRootNode(), new DocumentFactory() {
+            @Override
+            public DocumentSink createDocument() {
+                final IndexDocument document = support.createDocument(indexable);
+                documents.add(document);
+                return new DocumentSink() {
+                    @Override
+                    public void addPair(String key, String value, boolean searchable, boolean stored) {
+                        document.addPair(key, value, searchable, stored);
+                    }
+                };
+            }
+        });
+        for (IndexDocument document : documents) {
+            support.addDocument(document);
+        }
+        Map<String, String> inherits = new HashMap<>();
+        for (PClass cl : res.getRootNode().getChildrenOfType(PClass.class, false)) {
+            if (cl.getInherits() != null) {
+                inherits.put(cl.getName(), cl.getInherits().getName());
+            }
+        }
+        InheritanceGraph.getDefault().update(context.getRootURI(), indexable.getURL(), inherits);
+    }
+
+    /**
+     * Receives the fields of the index document, {@link IndexDocument} is final and
+     * can only be created by {@link IndexingSupport}.
+     */
+    public interface DocumentSink {
+        void addPair(String key, String value, boolean searchable, boolean stored);
+    }
+
+    /**
+     * Creates the index documents of one file.
+     */
+    public interface DocumentFactory {
+        DocumentSink createDocument();
+    }
+
+    /**
+     * fills the index documents for the given tree, usable outside of the indexing infrastructure.
+     * Each top level class, define and node gets a document of its own, everything else
+     * in the file shares one more document without FLD_ROOT.
+     * @param root root element of a finished parse
+     * @param factory
+     */
+    public static void buildDocuments(PElement root, DocumentFactory factory) {
+        FieldCollector fileCollector = null;
         for (PElement ch : root.getChildren()) {
+            FieldCollector collector;
+            if (ch.getType() == PElement.CLASS || ch.getType() == PElement.DEFINE || ch.getType() == PElement.NODE) {
+                collector = new FieldCollector(factory.createDocument());
+            } else {
+                if (fileCollector == null) {
+                    fileCollector = new FieldCollector(factory.createDocument());
+                }
+                collector = fileCollector;
+            }
+            DocumentSink document = collector.document;
             if (ch.getType() == PElement.CLASS) {
                 PClass cl = (PClass)ch;
                 String name = cl.getName();
                 document.addPair(FLD_ROOT, name, true, true);
+                document.addPair(FLD_ROOT_OFFSET, offsetValue(name, cl.getNameOffset()), false, true);
                 document.addPair(FLD_CLASS, name, true, false);
                 if (cl.getInherits() != null) {
-                    document.addPair(FLD_CLASSREF, cl.getInherits().getName(), true, false);
+                    collector.addClassRef(cl.getInherits().getName());
                     document.addPair(FLD_INHERIT, cl.getInherits().getName(), true, true);
                 }
             }
@@ -100,8 +192,18 @@ public class PPIndexer extends EmbeddingIndexer {
                 PDefine def = (PDefine)ch;
                 String name = def.getName();
                 document.addPair(FLD_ROOT, name, true, true);
+                document.addPair(FLD_ROOT_OFFSET, offsetValue(name, def.getNameOffset()), false, true);
                 document.addPair(FLD_DEFINE, name, true, false);
             }
+            if (ch.getType() == PElement.NODE) {
+                List<String> names = getNodeNames((PNode) ch);
+                if (!names.isEmpty()) {
+                    document.addPair(FLD_ROOT, names.get(0), false, true);
+                }
+                for (String name : names) {
+                    document.addPair(FLD_NODE, name, true, true);
+                }
+            }
             if (ch instanceof PParamContainer) {
                 PParamContainer cl = (PParamContainer)ch;
                 for (PClassParam param : cl.getParams()) {
@@ -111,48 +213,167 @@ public class PPIndexer extends EmbeddingIndexer {
                     }
                 }
             }
-            List<PClassRef> refs = ch.getChildrenOfType(PClassRef.class, true);
-            for (PClassRef ref : refs) {
-                document.addPair(FLD_CLASSREF, ref.getName(), true, false);
-            }
-            List<String> addedVars = new ArrayList<>();
-            List<PVariableDefinition> varDefs = ch.getChildrenOfType(PVariableDefinition.class, true);
-            for (PVariableDefinition vd : varDefs) {
-                if (!addedVars.contains(vd.getName())) {
-                    document.addPair(FLD_VAR, stripDollar(vd.getName()), true, true);
-                    document.addPair(FLD_VARREF, stripDollar(vd.getName()), true, false);
-                    addedVars.add(vd.getName());
-                }
+            for (PElement el : ch.getChildren()) {
+                collector.visit(el);
             }
-            List<PVariable> vars = ch.getChildrenOfType(PVariable.class, true);
-            for (PVariable v : vars) {
-                if (!addedVars.contains(v.getName())) {
-                    document.addPair(FLD_VARREF, stripDollar(v.getName()), true, false);
-                    addedVars.add(v.getName());
+            if (ch.getType() == PElement.NODE) {
+                for (String ref : collector.classRefs) {
+                    document.addPair(FLD_NODE_CLASS, ref, false, true);
                 }
             }
-            List<PResource> resources = ch.getChildrenOfType(PResource.class, true);
-            Set<String> resNames = new HashSet<>();
+        }
+    }
+
+    /**
+     * @return names of the node definition as matched against hostnames, without quotes and the legacy inherits clause
+     */
+    public static List<String> getNodeNames(PNode node) {
+        List<String> names = new ArrayList<>();
+        if (node.getNames() == null) {
+            return names;
+        }
+        for (String name : node.getNames()) {
+            if ("inherits".equals(name)) {
+                break;
+            }
+            if (name.length() >= 2 && (name.startsWith("'") && name.endsWith("'") || name.startsWith("\"") && name.endsWith("\""))) {
+                name = name.substring(1, name.length() - 1);
+            }
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * collects the reference fields of a subtree in one traversal, each value added once.
+     */
+    private static final class FieldCollector {
+        private final DocumentSink document;
+        private final Set<String> vars = new HashSet<>();
+        private final Set<String> varRefs = new HashSet<>();
+        private final Set<String> classRefs = new LinkedHashSet<>();
+        private final Set<String> resources = new HashSet<>();
+        private final Set<String> functions = new HashSet<>();
 
-            for (PResource r : resources) {
-                resNames.add(r.getResourceType());
+        FieldCollector(DocumentSink document) {
+            this.document = document;
+        }
+
+        void visit(PElement el) {
+            switch (el.getType()) {
+                case PElement.CLASS_REF:
+                    addClassRef(((PClassRef) el).getName());
+                    break;
+                case PElement.VARIABLE_DEFINITION:
+                    String var = stripDollar(((PVariableDefinition) el).getName());
+                    if (vars.add(var)) {
+                        document.addPair(FLD_VAR, var, true, true);
+                        document.addPair(FLD_VAR_OFFSET, offsetValue(var, el.getOffset()), false, true);
+                    }
+                    addVarRef(var);
+                    break;
+                case PElement.VARIABLE:
+                    addVarRef(stripDollar(((PVariable) el).getName()));
+                    break;
+                case PElement.RESOURCE:
+                    PResource resource = (PResource) el;
+                    String type = resource.getResourceType();
+                    if (resources.add(type)) {
+                        document.addPair(FLD_RESOURCE, type, true, false);
+                    }
+                    if (!resource.isInsideConditional()) {
+                        for (String key : getResourceKeys(resource)) {
+                            document.addPair(FLD_RESOURCE_DECL, key, true, true);
+                            document.addPair(FLD_RESOURCE_DECL_OFFSET, offsetValue(key, resource.getOffset()), false, true);
+                        }
+                    }
+                    break;
+                case PElement.FUNCTION:
+                    String function = ((PFunction) el).getName();
+                    if (functions.add(function)) {
+                        document.addPair(FLD_FUNCTION, function, true, false);
+                    }
+                    break;
+                default:
             }
-            for (String r : resNames) {
-                document.addPair(FLD_RESOURCE, r, true, false);
+            for (PElement ch : el.getChildren()) {
+                visit(ch);
             }
-            Set<String> fNames = new HashSet<>();
-            List<PFunction> funcs = ch.getChildrenOfType(PFunction.class, true);
-            for (PFunction r : funcs) {
-                fNames.add(r.getName());
+        }
+
+        void addClassRef(String ref) {
+            if (classRefs.add(ref)) {
+                document.addPair(FLD_CLASSREF, ref, true, false);
             }
-            for (String f : fNames) {
-                document.addPair(FLD_FUNCTION, f, true, false);
+        }
+
+        private void addVarRef(String var) {
+            if (varRefs.add(var)) {
+                document.addPair(FLD_VARREF, var, true, false);
+            }
+        }
+    }
+
+    /**
+     * declaration keys {@code type[title]} of a resource, the type lowercased as puppet compares it.
+     * Only literal titles count, class resources use the class name.
+     * @return empty for resource defaults and titles computed from variables
+     */
+    public static List<String> getResourceKeys(PResource resource) {
+        String type = resource.getResourceType();
+        PElement title = resource.getTitle();
+        if (title == null || Character.isUpperCase(type.charAt(0))) {
+            return Collections.emptyList();
+        }
+        type = type.toLowerCase(Locale.ENGLISH);
+        List<String> keys = new ArrayList<>();
+        if (title.getType() == PElement.CLASS_REF) {
+            keys.add(type + "[" + ((PClassRef) title).getName() + "]");
+        } else if (isLiteral(title)) {
+            keys.add(type + "[" + ((PString) title).getValue() + "]");
+        } else if (title.getType() == PElement.BLOB) {
+            for (PElement ch : title.getChildren()) {
+                if (isLiteral(ch)) {
+                    keys.add(type + "[" + ((PString) ch).getValue() + "]");
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static boolean isLiteral(PElement el) {
+        //interpolated variables are children of the string, bare word titles have no value
+        return el.getType() == PElement.STRING && el.getChildren().isEmpty() && !((PString) el).getValue().isEmpty();
+    }
+
+    private static String offsetValue(String name, int offset) {
+        return name + ":" + offset;
+    }
+
+    /**
+     * reads the offset stored for name in one of the offset fields.
+     * @param result query result loaded with the field
+     * @param field {@link #FLD_ROOT_OFFSET} or {@link #FLD_VAR_OFFSET}
+     * @param name class, define or variable name (without $)
+     * @return offset or -1 if not known
+     */
+    public static int getOffset(IndexResult result, String field, String name) {
+        for (String value : result.getValues(field)) {
+            int sep = value.lastIndexOf(':');
+            if (sep == name.length() && value.startsWith(name)) {
+                try {
+                    return Integer.parseInt(value.substring(sep + 1));
+                } catch (NumberFormatException ex) {
+                    return -1;
+                }
             }
         }
-        support.addDocument(document);
+        return -1;
     }
 
-    private String stripDollar(String s) {
+    private static String stripDollar(String s) {
         return s.startsWith("$") ? s.substring(1) : s;
     }
 
@@ -18,9 +18,12 @@
 package com.tropyx.nb_puppet.indexer;
 
 import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.text.Document;
@@ -38,7 +41,7 @@ import org.openide.filesystems.FileObject;
 
 public class PPIndexerFactory extends EmbeddingIndexerFactory {
     public static final String INDEXER_TYPE = "puppet";
-    public static final int INDEXER_VERSION = 2;
+    public static final int INDEXER_VERSION = 8;
 
     private static final Logger LOG = Logger.getLogger(PPIndexerFactory.class.getName());
 
@@ -62,12 +65,20 @@ public class PPIndexerFactory extends EmbeddingIndexerFactory {
             IndexingSupport is = IndexingSupport.getInstance(context);
             for (Indexable i : deleted) {
                 is.removeDocuments(i);
+                InheritanceGraph.getDefault().remove(context.getRootURI(), i.getURL());
             }
         } catch (IOException ioe) {
             LOG.log(Level.WARNING, null, ioe);
         }
     }
 
+    @Override
+    public void rootsRemoved(Iterable<? extends URL> removedRoots) {
+        for (URL root : removedRoots) {
+            InheritanceGraph.getDefault().removeRoot(root);
+        }
+    }
+
     @Override
     public void filesDirty(Iterable<? extends Indexable> dirty, Context context) {
         try {
@@ -96,6 +107,25 @@ public class PPIndexerFactory extends EmbeddingIndexerFactory {
     }
     
     public static QuerySupport getQuerySupportFor(final Document document, boolean allOpenProjects) throws IOException {
+        Collection<FileObject> roots = getRoots(document, allOpenProjects);
+        return QuerySupport.forRoots(PPIndexerFactory.INDEXER_TYPE, PPIndexerFactory.INDEXER_VERSION, roots.toArray(new FileObject[0]));
+    }
+
+    /**
+     * inheritance of the same roots {@link #getQuerySupportFor(javax.swing.text.Document, boolean)} queries.
+     */
+    public static InheritanceGraph getInheritanceGraphFor(final Document document, boolean allOpenProjects) throws IOException {
+        Collection<FileObject> roots = getRoots(document, allOpenProjects);
+        InheritanceGraph graph = InheritanceGraph.getDefault();
+        graph.ensureLoaded(roots);
+        List<URL> urls = new ArrayList<>();
+        for (FileObject root : roots) {
+            urls.add(root.toURL());
+        }
+        return graph.forRoots(urls);
+    }
+
+    static Collection<FileObject> getRoots(final Document document, boolean allOpenProjects) {
         FileObject fo = NbEditorUtilities.getFileObject(document);
         Collection<FileObject> roots;
         if (allOpenProjects) {
@@ -108,7 +138,7 @@ public class PPIndexerFactory extends EmbeddingIndexerFactory {
                 roots = Collections.emptyList();
             }
         }
-        return QuerySupport.forRoots(PPIndexerFactory.INDEXER_TYPE, PPIndexerFactory.INDEXER_VERSION, roots.toArray(new FileObject[0]));
+        return roots;
     }
 
 
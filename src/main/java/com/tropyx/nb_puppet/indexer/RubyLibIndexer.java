@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.netbeans.modules.parsing.spi.indexing.Context;
+import org.netbeans.modules.parsing.spi.indexing.CustomIndexer;
+import org.netbeans.modules.parsing.spi.indexing.Indexable;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexDocument;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexingSupport;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.URLMapper;
+
+/**
+ * indexes custom types and functions written in ruby in the lib folder of a module.
+ * The files are scanned line by line for the well known declarations, no ruby runtime involved.
+ */
+public class RubyLibIndexer extends CustomIndexer {
+    /**
+     * custom type name, stored searchable
+     */
+    public static final String FLD_TYPE = "rubytype";
+    /**
+     * stored only, {@code name:offset} for each FLD_TYPE value
+     */
+    public static final String FLD_TYPE_OFFSET = "rubytypeoffset";
+    /**
+     * function name, create_function (4.x api) or newfunction (3.x api), stored searchable
+     */
+    public static final String FLD_FUNCTION = "rubyfunction";
+    /**
+     * stored only, {@code name:offset} for each FLD_FUNCTION value
+     */
+    public static final String FLD_FUNCTION_OFFSET = "rubyfunctionoffset";
+
+    public static final String LIB_FOLDER = "lib";
+
+    private static final String[] FOLDERS = new String[] {
+        "puppet/type/", "puppet/functions/", "puppet/parser/functions/"
+    };
+
+    // name is a symbol or a string, with or without parens, eg. (:foo), :'mod::foo', ("foo")
+    private static final String NAME = "(?:\\(\\s*|\\s+)(?::|(?=['\"]))(['\"]?)([\\w:]+)\\1";
+    private static final Pattern TYPE = Pattern.compile("\\bnewtype" + NAME);
+    private static final Pattern FUNCTION = Pattern.compile("\\b(?:create_function|newfunction)" + NAME);
+
+    private static final Logger LOG = Logger.getLogger(RubyLibIndexer.class.getName());
+
+    @Override
+    protected void index(Iterable<? extends Indexable> files, Context context) {
+        FileObject root = context.getRoot();
+        if (root == null || !LIB_FOLDER.equals(root.getNameExt())) {
+            return;
+        }
+        IndexingSupport support;
+        try {
+            support = IndexingSupport.getInstance(context);
+        } catch (IOException ioe) {
+            LOG.log(Level.WARNING, null, ioe);
+            return;
+        }
+        for (Indexable indexable : files) {
+            if (!isDeclarationFile(indexable.getRelativePath())) {
+                continue;
+            }
+            FileObject fo = URLMapper.findFileObject(indexable.getURL());
+            if (fo == null) {
+                continue;
+            }
+            Definitions defs;
+            try (Reader reader = new BufferedReader(new InputStreamReader(fo.getInputStream(), StandardCharsets.UTF_8))) {
+                defs = scan(reader);
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, null, ex);
+                continue;
+            }
+            support.removeDocuments(indexable);
+            IndexDocument document = support.createDocument(indexable);
+            for (Map.Entry<String, Integer> type : defs.types.entrySet()) {
+                document.addPair(FLD_TYPE, type.getKey(), true, true);
+                document.addPair(FLD_TYPE_OFFSET, type.getKey() + ":" + type.getValue(), false, true);
+            }
+            for (Map.Entry<String, Integer> function : defs.functions.entrySet()) {
+                document.addPair(FLD_FUNCTION, function.getKey(), true, true);
+                document.addPair(FLD_FUNCTION_OFFSET, function.getKey() + ":" + function.getValue(), false, true);
+            }
+            support.addDocument(document);
+        }
+    }
+
+    private static boolean isDeclarationFile(String path) {
+        if (!path.endsWith(".rb")) {
+            return false;
+        }
+        for (String folder : FOLDERS) {
+            if (path.startsWith(folder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * finds type and function declarations, comments and strings are skipped, heredocs and strings
+     * spanning several lines are not.
+     */
+    public static Definitions scan(Reader reader) throws IOException {
+        Definitions defs = new Definitions();
+        LineReader lines = new LineReader(reader);
+        String line;
+        while ((line = lines.next()) != null) {
+            int hash = line.indexOf('#');
+            if (hash != -1 && line.substring(0, hash).trim().isEmpty()) {
+                continue;
+            }
+            Matcher m = find(TYPE, line);
+            if (m != null) {
+                add(defs.types, m, lines.lineStart());
+            }
+            m = find(FUNCTION, line);
+            if (m != null) {
+                add(defs.functions, m, lines.lineStart());
+            }
+        }
+        return defs;
+    }
+
+    /**
+     * @return first match that doesn't start inside a string literal, null if there is none
+     */
+    private static Matcher find(Pattern pattern, String line) {
+        Matcher m = pattern.matcher(line);
+        while (m.find()) {
+            if (!isInString(line, m.start())) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if a quoted string opened before the position on the same line is still open there
+     */
+    private static boolean isInString(String line, int position) {
+        char quote = 0;
+        for (int i = 0; i < position; i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            }
+        }
+        return quote != 0;
+    }
+
+    private static void add(Map<String, Integer> names, Matcher m, int lineStart) {
+        if (!names.containsKey(m.group(2))) {
+            names.put(m.group(2), lineStart + m.start(2));
+        }
+    }
+
+    /**
+     * declarations found in a single ruby file, names mapped to their offsets.
+     */
+    public static final class Definitions {
+        public final Map<String, Integer> types = new LinkedHashMap<>();
+        public final Map<String, Integer> functions = new LinkedHashMap<>();
+    }
+}
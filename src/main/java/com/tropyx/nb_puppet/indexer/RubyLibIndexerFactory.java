@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.text.Document;
+import org.netbeans.modules.parsing.spi.indexing.Context;
+import org.netbeans.modules.parsing.spi.indexing.CustomIndexer;
+import org.netbeans.modules.parsing.spi.indexing.CustomIndexerFactory;
+import org.netbeans.modules.parsing.spi.indexing.Indexable;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexingSupport;
+import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.MIMEResolver;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * registered for ruby files in layer.xml, the extension registration makes sure .rb files
+ * get their mime type even when no ruby support is installed.
+ */
+@Messages("LBL_RubyFile=Ruby Files")
+@MIMEResolver.ExtensionRegistration(
+    displayName = "#LBL_RubyFile",
+    mimeType = "text/x-ruby",
+    extension = {"rb"},
+    position = 1000)
+public class RubyLibIndexerFactory extends CustomIndexerFactory {
+    public static final String INDEXER_TYPE = "puppet-ruby";
+    public static final int INDEXER_VERSION = 2;
+
+    private static final Logger LOG = Logger.getLogger(RubyLibIndexerFactory.class.getName());
+
+    @Override
+    public CustomIndexer createIndexer() {
+        return new RubyLibIndexer();
+    }
+
+    @Override
+    public boolean supportsEmbeddedIndexers() {
+        return false;
+    }
+
+    @Override
+    public void filesDeleted(Iterable<? extends Indexable> deleted, Context context) {
+        try {
+            IndexingSupport is = IndexingSupport.getInstance(context);
+            for (Indexable i : deleted) {
+                is.removeDocuments(i);
+            }
+        } catch (IOException ioe) {
+            LOG.log(Level.WARNING, null, ioe);
+        }
+    }
+
+    @Override
+    public void filesDirty(Iterable<? extends Indexable> dirty, Context context) {
+        try {
+            IndexingSupport is = IndexingSupport.getInstance(context);
+            for (Indexable i : dirty) {
+                is.markDirtyDocuments(i);
+            }
+        } catch (IOException ioe) {
+            LOG.log(Level.WARNING, null, ioe);
+        }
+    }
+
+    @Override
+    public String getIndexerName() {
+        return INDEXER_TYPE;
+    }
+
+    @Override
+    public int getIndexVersion() {
+        return INDEXER_VERSION;
+    }
+
+    /**
+     * ruby types and functions of the same roots {@link PPIndexerFactory#getQuerySupportFor(javax.swing.text.Document, boolean)} queries.
+     */
+    public static QuerySupport getQuerySupportFor(final Document document, boolean allOpenProjects) throws IOException {
+        Collection<FileObject> roots = PPIndexerFactory.getRoots(document, allOpenProjects);
+        return QuerySupport.forRoots(INDEXER_TYPE, INDEXER_VERSION, roots.toArray(new FileObject[0]));
+    }
+}
@@ -74,13 +74,14 @@ public class PPSymbolProvider implements SymbolProvider{
             }
             QuerySupport qs = QuerySupport.forRoots(PPIndexerFactory.INDEXER_TYPE, PPIndexerFactory.INDEXER_VERSION, roots.toArray(new FileObject[0]));
             if (cancelled.get()) return;
-            for ( IndexResult r :qs.query(PPIndexer.FLD_VAR, text, PPTypeProvider.searchType2Kind(type), PPIndexer.FLD_ROOT, PPIndexer.FLD_VAR)) {
+            for ( IndexResult r :qs.query(PPIndexer.FLD_VAR, text, PPTypeProvider.searchType2Kind(type), PPIndexer.FLD_ROOT, PPIndexer.FLD_VAR, PPIndexer.FLD_VAR_OFFSET)) {
                 if (cancelled.get()) return;
                 final String root = r.getValue(PPIndexer.FLD_ROOT);
                 for (String v : r.getValues(PPIndexer.FLD_VAR)) {
                     if (cancelled.get()) return;
                     if (matches(v, type, text)) {
-                        result.addResult(new PPSymbolProvider.SymbolDescriptorImpl(v, root, r.getFile(), 0));
+                        int offset = Math.max(0, PPIndexer.getOffset(r, PPIndexer.FLD_VAR_OFFSET, v));
+                        result.addResult(new PPSymbolProvider.SymbolDescriptorImpl(v, root, r.getFile(), offset));
                     }
                 }
             }
@@ -145,7 +146,8 @@ public class PPSymbolProvider implements SymbolProvider{
 
         @Override
         public String getOwnerName() {
-            return root;
+            //variables outside of classes, defines and nodes
+            return root != null ? root : file.getNameExt();
         }
 
         @Override
@@ -171,7 +173,6 @@ public class PPSymbolProvider implements SymbolProvider{
 
         @Override
         public int getOffset() {
-            //TODO
             return offset;
         }
 
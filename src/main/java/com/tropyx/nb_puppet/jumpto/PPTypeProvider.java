@@ -18,14 +18,19 @@ package com.tropyx.nb_puppet.jumpto;
 
 import com.tropyx.nb_puppet.PPConstants;
 import com.tropyx.nb_puppet.hyperlink.PHyperlinkProvider;
+import com.tropyx.nb_puppet.indexer.BuiltInTypes;
 import com.tropyx.nb_puppet.indexer.PPIndexer;
 import com.tropyx.nb_puppet.indexer.PPIndexerFactory;
 import com.tropyx.nb_puppet.refactoring.PPWhereUsedQueryPlugin;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.Icon;
 import javax.swing.text.StyledDocument;
 import org.netbeans.api.annotations.common.CheckForNull;
@@ -41,6 +46,7 @@ import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport;
 import org.netbeans.spi.jumpto.type.SearchType;
 import org.netbeans.spi.jumpto.type.TypeDescriptor;
 import org.netbeans.spi.jumpto.type.TypeProvider;
+import org.openide.awt.HtmlBrowser;
 import org.openide.filesystems.FileObject;
 import org.openide.text.CloneableEditorSupport;
 import org.openide.util.Exceptions;
@@ -94,11 +100,18 @@ public class PPTypeProvider implements TypeProvider {
             if (SearchType.CASE_INSENSITIVE_REGEXP == type  || SearchType.REGEXP == type) {
                 text = text.replace("*", ".*").replace("?", ".?");
             }
+            //not indexed, documented at puppetlabs instead of a stub file
+            for (BuiltInTypes.Type builtIn : BuiltInTypes.getDefault().getTypes("")) {
+                if (matches(builtIn.getName(), text, type)) {
+                    result.addResult(new BuiltInTypeDescriptor(builtIn.getName()));
+                }
+            }
             QuerySupport qs = QuerySupport.forRoots(PPIndexerFactory.INDEXER_TYPE, PPIndexerFactory.INDEXER_VERSION, roots.toArray(new FileObject[0]));
             if (cancelled.get()) return;
-            for ( IndexResult r :qs.query(PPIndexer.FLD_ROOT, text, searchType2Kind(type), PPIndexer.FLD_ROOT)) {
+            for ( IndexResult r :qs.query(PPIndexer.FLD_ROOT, text, searchType2Kind(type), PPIndexer.FLD_ROOT, PPIndexer.FLD_ROOT_OFFSET)) {
                 if (cancelled.get()) return;
-                result.addResult(new TypeDescriptorImpl(r.getValue(PPIndexer.FLD_ROOT), r.getFile(), 0));
+                String name = r.getValue(PPIndexer.FLD_ROOT);
+                result.addResult(new TypeDescriptorImpl(name, r.getFile(), Math.max(0, PPIndexer.getOffset(r, PPIndexer.FLD_ROOT_OFFSET, name))));
             }
         } catch (IOException ex) {
             Exceptions.printStackTrace(ex);
@@ -106,6 +119,26 @@ public class PPTypeProvider implements TypeProvider {
 
     }
 
+    /**
+     * @param text already converted to a regexp for the regexp search types
+     */
+    static boolean matches(String name, String text, SearchType type) {
+        switch (type) {
+            case PREFIX : return name.startsWith(text);
+            case EXACT_NAME : return name.equals(text);
+            case CASE_INSENSITIVE_EXACT_NAME : return name.equalsIgnoreCase(text);
+            case CASE_INSENSITIVE_PREFIX : return name.toLowerCase().startsWith(text.toLowerCase());
+            case REGEXP :
+            case CASE_INSENSITIVE_REGEXP :
+                try {
+                    return Pattern.compile(text, type == SearchType.REGEXP ? 0 : Pattern.CASE_INSENSITIVE).matcher(name).matches();
+                } catch (PatternSyntaxException ex) {
+                    return false;
+                }
+            default: return name.equals(text);
+        }
+    }
+
     static QuerySupport.Kind searchType2Kind(SearchType type) {
         switch (type) {
             case CAMEL_CASE : return QuerySupport.Kind.CAMEL_CASE;
@@ -143,6 +176,72 @@ public class PPTypeProvider implements TypeProvider {
     public void cleanup() {
     }
 
+    /**
+     * built-in resource type, opens its reference documentation
+     */
+    private static class BuiltInTypeDescriptor extends TypeDescriptor {
+        private static final String TYPE_REFERENCE = "https://docs.puppetlabs.com/puppet/4.2/reference/type.html#";
+        private final String typeName;
+
+        BuiltInTypeDescriptor(String typeName) {
+            this.typeName = typeName;
+        }
+
+        @Override
+        public String getSimpleName() {
+            return typeName;
+        }
+
+        @Override
+        public String getOuterName() {
+            return "";
+        }
+
+        @Override
+        public String getTypeName() {
+            return typeName;
+        }
+
+        @Override
+        public String getContextName() {
+            return "built-in";
+        }
+
+        @Override
+        public Icon getIcon() {
+            return ImageUtilities.loadImageIcon(PPConstants.ICON_PUPPET_FILE, true);
+        }
+
+        @Override
+        public String getProjectName() {
+            return null;
+        }
+
+        @Override
+        public Icon getProjectIcon() {
+            return null;
+        }
+
+        @Override
+        public FileObject getFileObject() {
+            return null;
+        }
+
+        @Override
+        public int getOffset() {
+            return -1;
+        }
+
+        @Override
+        public void open() {
+            try {
+                HtmlBrowser.URLDisplayer.getDefault().showURL(new URL(TYPE_REFERENCE + typeName));
+            } catch (MalformedURLException ex) {
+                Exceptions.printStackTrace(ex);
+            }
+        }
+    }
+
     private static class TypeDescriptorImpl extends TypeDescriptor {
         private final String typeName;
         private final @NullAllowed Project project;
@@ -204,7 +303,6 @@ public class PPTypeProvider implements TypeProvider {
 
         @Override
         public int getOffset() {
-            //TODO
             return offset;
         }
 
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.lexer;
+
+/**
+ * Lexer state between a heredoc header {@code @(TAG)} and the end of its body.
+ * The body starts on the line following the header and is lexed as a single token.
+ */
+final class HeredocState {
+
+    private final String tag;
+    private final boolean interpolated;
+    private final String escapes;
+    private final boolean body;
+
+    HeredocState(String tag, boolean interpolated, String escapes, boolean body) {
+        this.tag = tag;
+        this.interpolated = interpolated;
+        this.escapes = escapes;
+        this.body = body;
+    }
+
+    /**
+     * parses the header content between the parentheses, eg. {@code "END":json/tn}
+     * @return null if not a valid header
+     */
+    static HeredocState parseHeader(CharSequence header) {
+        String text = header.toString().trim();
+        String escapes = null;
+        int slash = text.indexOf('/');
+        if (slash != -1) {
+            escapes = text.substring(slash + 1).trim();
+            text = text.substring(0, slash).trim();
+        }
+        int colon = text.indexOf(':');
+        if (colon != -1) {
+            text = text.substring(0, colon).trim();
+        }
+        boolean interpolated = false;
+        if (text.length() >= 2 && text.startsWith("\"") && text.endsWith("\"")) {
+            interpolated = true;
+            text = text.substring(1, text.length() - 1);
+        }
+        if (text.isEmpty() || text.indexOf('"') != -1) {
+            return null;
+        }
+        return new HeredocState(text, interpolated, escapes, false);
+    }
+
+    String getTag() {
+        return tag;
+    }
+
+    boolean isInterpolated() {
+        return interpolated;
+    }
+
+    /**
+     * @return escape flags following / in the header, null if none
+     */
+    String getEscapes() {
+        return escapes;
+    }
+
+    /**
+     * @return true once the line with the header was finished
+     */
+    boolean isBody() {
+        return body;
+    }
+
+    HeredocState startBody() {
+        return new HeredocState(tag, interpolated, escapes, true);
+    }
+
+    /**
+     * end marker is the tag on its own line, optionally preceded by | (margin) and - (trim)
+     */
+    boolean isEnd(CharSequence line) {
+        int start = 0;
+        int end = line.length();
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        start = skipWhitespace(line, start, end);
+        if (start < end && line.charAt(start) == '|') {
+            start = skipWhitespace(line, start + 1, end);
+        }
+        if (start < end && line.charAt(start) == '-') {
+            start = skipWhitespace(line, start + 1, end);
+        }
+        return end - start == tag.length() && tag.contentEquals(line.subSequence(start, end));
+    }
+
+    private static int skipWhitespace(CharSequence line, int start, int end) {
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = tag.hashCode();
+        hash = 31 * hash + (interpolated ? 1 : 0);
+        hash = 31 * hash + (escapes != null ? escapes.hashCode() : 0);
+        hash = 31 * hash + (body ? 1 : 0);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof HeredocState)) {
+            return false;
+        }
+        HeredocState other = (HeredocState) obj;
+        return tag.equals(other.tag) && interpolated == other.interpolated && body == other.body
+                && (escapes == null ? other.escapes == null : escapes.equals(other.escapes));
+    }
+
+    @Override
+    public String toString() {
+        return "HeredocState[" + tag + (body ? ", body]" : "]");
+    }
+}
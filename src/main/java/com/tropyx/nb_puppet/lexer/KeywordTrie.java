@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.lexer;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Keywords, word operators and built-in functions of {@link PTokenId} as a trie over
+ * lowercase letters, with a dense transition table of 26 entries per node.
+ * No keyword is a prefix of another one, so a node is either terminal or has children.
+ */
+final class KeywordTrie {
+
+    static final int ROOT = 0;
+    static final int NONE = -1;
+    private static final int LETTERS = 26;
+
+    /**
+     * have always been lexed as identifiers
+     */
+    private static final Set<PTokenId> IDENTIFIERS = EnumSet.of(PTokenId.OR, PTokenId.IN, PTokenId.INFO);
+    /**
+     * functions lexed like keywords, without looking ahead for { or =
+     */
+    private static final Set<PTokenId> KEYWORD_LIKE = EnumSet.of(PTokenId.DEBUG);
+
+    private int[] next;
+    private PTokenId[] tokens;
+    private boolean[] functions;
+    private int size;
+
+    private KeywordTrie() {
+        next = new int[16 * LETTERS];
+        tokens = new PTokenId[16];
+        functions = new boolean[16];
+        Arrays.fill(next, NONE);
+        size = 1;
+    }
+
+    static KeywordTrie create() {
+        KeywordTrie trie = new KeywordTrie();
+        for (PTokenId id : PTokenId.values()) {
+            String text = id.fixedText();
+            if (text == null || !isWord(text) || IDENTIFIERS.contains(id)) {
+                continue;
+            }
+            boolean function = PTokenId.Category.FUNCTION.equals(id.primaryCategory()) && !KEYWORD_LIKE.contains(id);
+            trie.add(text, id, function);
+        }
+        return trie;
+    }
+
+    private static boolean isWord(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(String text, PTokenId id, boolean function) {
+        int node = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            if (tokens[node] != null) {
+                throw new IllegalStateException(tokens[node] + " is prefix of " + id);
+            }
+            int index = node * LETTERS + text.charAt(i) - 'a';
+            if (next[index] == NONE) {
+                //newNode() may reallocate next, don't write into the old array
+                int child = newNode();
+                next[index] = child;
+            }
+            node = next[index];
+        }
+        for (int i = 0; i < LETTERS; i++) {
+            if (next[node * LETTERS + i] != NONE) {
+                throw new IllegalStateException(id + " is prefix of another keyword");
+            }
+        }
+        tokens[node] = id;
+        functions[node] = function;
+    }
+
+    private int newNode() {
+        if (size == tokens.length) {
+            int capacity = size * 2;
+            int oldLength = next.length;
+            next = Arrays.copyOf(next, capacity * LETTERS);
+            Arrays.fill(next, oldLength, next.length, NONE);
+            tokens = Arrays.copyOf(tokens, capacity);
+            functions = Arrays.copyOf(functions, capacity);
+        }
+        return size++;
+    }
+
+    /**
+     * @return child node for the character or {@link #NONE}
+     */
+    int child(int node, int c) {
+        if (c < 'a' || c > 'z') {
+            return NONE;
+        }
+        return next[node * LETTERS + c - 'a'];
+    }
+
+    /**
+     * @return token id if the node completes a keyword, null otherwise
+     */
+    PTokenId token(int node) {
+        return tokens[node];
+    }
+
+    boolean isFunction(int node) {
+        return functions[node];
+    }
+}
@@ -17,6 +17,8 @@
 
 package com.tropyx.nb_puppet.lexer;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.netbeans.api.lexer.PartType;
 import org.netbeans.api.lexer.Token;
 import org.netbeans.spi.lexer.Lexer;
@@ -37,15 +39,103 @@ public class PLexer implements Lexer<PTokenId>
 
     private final TokenFactory<PTokenId> tokenFactory;
 
+    /**
+     * lexer states, strings and comments spanning multiple lines are lexed as one token part
+     * per line, the state tells what construct the next line continues.
+     */
+    private static final int DEFAULT = 0;
+    private static final int IN_SINGLE_QUOTED = 1;
+    private static final int IN_DOUBLE_QUOTED = 2;
+    private static final int IN_COMMENT = 3;
+    /**
+     * added to the state when the token was the first part, and a state of its own after the last part.
+     * On relex an old token is kept when id, length and state match, its part type is not compared.
+     */
+    private static final int FIRST_PART = IN_COMMENT;
+    private static final int AFTER_LAST_PART = IN_COMMENT + FIRST_PART + 1;
+    /**
+     * states with a heredoc pending follow the plain states, for each known header one state per plain
+     * state while the header line is finished plus one for the body. The lexer infrastructure handles
+     * Integer states up to 127 compactly, other state objects get out of sync with the tokens on edits.
+     */
+    private static final int HEREDOC_STATES = AFTER_LAST_PART + 1;
+    private static final int STATES_PER_HEADER = HEREDOC_STATES + 1;
+    private static final int MAX_HEADERS = (128 - HEREDOC_STATES) / STATES_PER_HEADER;
+    /**
+     * heredoc headers seen by all lexers, states refer to them by index. When full, further headers
+     * are lexed without their body.
+     */
+    private static final List<HeredocState> HEADERS = new ArrayList<>();
+
+    private static final KeywordTrie KEYWORDS = KeywordTrie.create();
+
+    private int state;
+    /**
+     * heredoc header was read, non null until the end of its body
+     */
+    private HeredocState heredoc;
+    /**
+     * index of the heredoc header in {@link #HEADERS}
+     */
+    private int heredocIndex;
+
     PLexer(LexerRestartInfo<PTokenId> lri)
     {
         input = lri.input();
         tokenFactory = lri.tokenFactory();
+        int st = lri.state() != null ? (Integer) lri.state() : DEFAULT;
+        if (st < HEREDOC_STATES) {
+            state = st;
+        } else {
+            heredocIndex = (st - HEREDOC_STATES) / STATES_PER_HEADER;
+            int rest = (st - HEREDOC_STATES) % STATES_PER_HEADER;
+            synchronized (HEADERS) {
+                heredoc = HEADERS.get(heredocIndex);
+            }
+            if (rest == HEREDOC_STATES) {
+                heredoc = heredoc.startBody();
+                state = DEFAULT;
+            } else {
+                state = rest;
+            }
+        }
+    }
+
+    /**
+     * @return index of the header in {@link #HEADERS}, -1 if the table is full
+     */
+    private static int headerIndex(HeredocState header) {
+        synchronized (HEADERS) {
+            int index = HEADERS.indexOf(header);
+            if (index == -1 && HEADERS.size() < MAX_HEADERS) {
+                index = HEADERS.size();
+                HEADERS.add(header);
+            }
+            return index;
+        }
     }
 
     @Override
     public Token<PTokenId> nextToken()
     {
+        if (state == AFTER_LAST_PART) {
+            state = DEFAULT;
+        } else if (state > IN_COMMENT) {
+            state -= FIRST_PART;
+        }
+        if (heredoc != null && heredoc.isBody()) {
+            return finishHeredocBody();
+        }
+        switch (state)
+        {
+            case IN_SINGLE_QUOTED:
+                return finishString(IN_SINGLE_QUOTED, '\'', true);
+            case IN_DOUBLE_QUOTED:
+                return finishString(IN_DOUBLE_QUOTED, '"', true);
+            case IN_COMMENT:
+                return finishMultiComment(true);
+            default:
+        }
         while (true)
         {
             int c = nextChar();
@@ -60,39 +150,15 @@ public class PLexer implements Lexer<PTokenId>
                         switch (nextChar()) {
                             case '\r': consumeNewline();
                             case '\n':
+                                startHeredocBody();
                             case EOF:
                                 return token(PTokenId.LINE_COMMENT);
                         }
                 case '\'': // string literal
-                    while (true)
-                        switch (nextChar()) {
-                            case '\'': // NOI18N
-                                return token(PTokenId.STRING_LITERAL);
-                            case '\\':
-                                nextChar(); // read escaped char
-                                break;
-                            case '\r': consumeNewline();
-                            case '\n':
-                            case EOF:
-                                return tokenFactory.createToken(PTokenId.STRING_LITERAL,
-                                        input.readLength(), PartType.START);
-                        }
+                    return finishString(IN_SINGLE_QUOTED, '\'', false);
                 case '"': // string literal
-                    while (true)
-                        switch (nextChar()) {
-                            case '"': // NOI18N
-                                //TODO make different from '?
-                                return token(PTokenId.STRING_LITERAL);
-                            case '\\':
-                                nextChar(); // read escaped char
-                                break;
-                            case '\r': consumeNewline();
-                            case '\n':
-                            case EOF:
-                                //TODO make different from '?
-                                return tokenFactory.createToken(PTokenId.STRING_LITERAL,
-                                        input.readLength(), PartType.START);
-                        }
+                    //TODO make different from '?
+                    return finishString(IN_DOUBLE_QUOTED, '"', false);
 
                 case '$':
                     return finishVariable(c);
@@ -159,7 +225,7 @@ public class PLexer implements Lexer<PTokenId>
                     return token(PTokenId.PIPE);
                 case '/':
                     if ((c = nextChar()) == '*') {
-                        return finishMultiComment();
+                        return finishMultiComment(false);
                     } else {
                         backup(1);
                         return finishRegexp();
@@ -190,327 +256,35 @@ public class PLexer implements Lexer<PTokenId>
                 case '?':
                     return token(PTokenId.QUESTIONMARK); 
                     
-                case 'a' :
-                    switch (c = nextChar())
-                    {
-                        case 'n' :
-                            if ((c = nextChar()) == 'd') 
-                            {
-                                return textOperatorOrIdentifier(PTokenId.AND);
-                            }
-                            break;
-                        case 'b':
-                            if ((c = nextChar()) == 's'
-                             && (c = nextChar()) == 'e'
-                             && (c = nextChar()) == 'n'
-                             && (c = nextChar()) == 't')
-                            {
-                                return keywordOrIdentifier(PTokenId.ABSENT);
-                            }
-                            break;
-                    }                            
-                    return finishIdentifier(c);
-                    
-                case 'c' :
-                    switch (c = nextChar())
-                    {
-                        case 'a' :
-                            if ((c = nextChar()) == 's'
-                             && (c = nextChar()) == 'e') 
-                            {
-                                return keywordOrIdentifier(PTokenId.CASE);
-                            }
-                            break;
-                        case 'l' :
-                            if ((c = nextChar()) == 'a'
-                             && (c = nextChar()) == 's'
-                             && (c = nextChar()) == 's') 
-                            {
-                                return keywordOrIdentifier(PTokenId.CLASS);
-                            }
-                            break;
-                        case 'o': 
-                            switch (c = nextChar()) 
-                            {
-                                case 'n' :
-                                    if ((c = nextChar()) == 't'
-                                     && (c = nextChar()) == 'a'
-                                     && (c = nextChar()) == 'i'
-                                     && (c = nextChar()) == 'n') 
-                                    {
-                                        return functionOrIdentifier(PTokenId.CONTAIN);
-                                    }
-                                    break;
-                            }
-                            break;
-                    }
-                    return finishIdentifier(c);
-                    
-                        
-                case 'd' : 
-                    if ((c = nextChar()) == 'e') {
-                        switch (c = nextChar()) {
-                            case 'f':
-                                switch (c = nextChar()) {
-                                    case 'i':
-                                        if ((c = nextChar()) == 'n'
-                                         && (c = nextChar()) == 'e') {
-                                            return keywordOrIdentifier(PTokenId.DEFINE);
-                                        }
-                                        break;
-                                    case 'a':
-                                        if ((c = nextChar()) == 'u'
-                                         && (c = nextChar()) == 'l'
-                                         && (c = nextChar()) == 't') {
-                                            return keywordOrIdentifier(PTokenId.DEFAULT);
-                                        }
-                                        break;
-                                }
-                                break;
-                            case 'b': 
-                                if ((c = nextChar()) == 'u'
-                                 && (c = nextChar()) == 'g') {
-                                    return keywordOrIdentifier(PTokenId.DEBUG);
-                                }
-                                break;
-                        }
-                    }
-                    return finishIdentifier(c);
-                    
-                case 'e' :
-                    switch (c = nextChar())
-                    {
-                        case 'l':
-                            if ((c = nextChar()) == 's') 
-                            {
-                                switch (c = nextChar()) {
-                                    case 'e' : return keywordOrIdentifier(PTokenId.ELSE);
-                                    case 'i' : 
-                                        if ((c = nextChar()) == 'f') {
-                                            return keywordOrIdentifier(PTokenId.ELSIF);
-                                        }
-                                        break;
-                                }
-                            }
-                            break;
-                        case 'r' :
-                            if ((c = nextChar()) == 'r') {
-                                return functionOrIdentifier(PTokenId.ERR);
-                            }
-                            break;
-                    }
-                    return finishIdentifier(c);
-                case 'f':
-                    switch (c = nextChar())
-                    {
-                        case 'a':
-                            switch (c = nextChar()) {
-                                case 'i' :
-                                    if ((c = nextChar()) == 'l')
-                                    {
-                                        return functionOrIdentifier(PTokenId.FAIL);
-                                    }
-                                    break;
-                                case 'l' :
-                                    if ((c = nextChar()) == 's'
-                                      && (c = nextChar()) == 'e') {
-                                        return keywordOrIdentifier(PTokenId.FALSE);
-                                    }
-                                    break;
-                            }
-                            break;
-                    }
-                    return finishIdentifier(c);
-                
-                case 'h' :
-                    return finishIdentifier(c);
-                    
-                case 'i':
-                    switch (c = nextChar())
-                    {
-                        case 'f':
-                            return keywordOrIdentifier(PTokenId.IF);
-                        case 'm':
-                            if ((c = nextChar()) == 'p'
-                                    && (c = nextChar()) == 'o'
-                                    && (c = nextChar()) == 'r'
-                                    && (c = nextChar()) == 't')
-                            {
-                                return keywordOrIdentifier(PTokenId.IMPORT);
-                            }
-                            break;
-                        case 'n':
-                            
-                            switch (c = nextChar())
-                            {
-                                case 'h':
-                                    if ((c = nextChar()) == 'e'
-                                        && (c = nextChar()) == 'r'
-                                        && (c = nextChar()) == 'i'
-                                        && (c = nextChar()) == 't'
-                                        && (c = nextChar()) == 's')
-                                    {
-                                        return keywordOrIdentifier(PTokenId.INHERITS);
-                                    }
-                                    break;
-                                    
-                                case 'c':
-                                    if ((c = nextChar()) == 'l'
-                                        && (c = nextChar()) == 'u'
-                                        && (c = nextChar()) == 'd'
-                                        && (c = nextChar()) == 'e')
-                                    {
-                                        return functionOrIdentifier(PTokenId.INCLUDE);
-                                    }
-                                    break;
-                            }
-                            break;
-                            
-                    }
-                    return finishIdentifier(c);
-                    
-                case 'l' :
-                    return finishIdentifier(c);
-                case 'm' :
-                        return finishIdentifier(c);
-                case 'n' :
-                    switch (c = nextChar()) {
-                        case 'o' :
-                            switch (c = nextChar())
-                            {
-                                case 't':
-                                    if ((c = nextChar()) == 'i'
-                                     && (c = nextChar()) == 'c'
-                                     && (c = nextChar()) == 'e')
-                                    {
-                                        return functionOrIdentifier(PTokenId.NOTICE);
-                                    }
-                                    return finishIdentifier(c);
-                                case 'd':
-                                    if ((c = nextChar()) == 'e')
-                                    {
-                                        return keywordOrIdentifier(PTokenId.NODE);
-                                    }
-                                    return finishIdentifier(c);
-                            }
-                            break;
-                        case 'i' :
-                            if ((c = nextChar()) == 'l') {
-                                return keywordOrIdentifier(PTokenId.NIL);
-                            }
-                            return finishIdentifier(c);
-                    }
-                    return finishIdentifier(c);
-                    
-                case 'o' :
-                    if ((c = nextChar()) == 'r')
-                    {
-                        return textOperatorOrIdentifier(PTokenId.OR, c);
-                    }
-                    return finishIdentifier(c);
-                    
-                case 'p' :
-                    if ((c = nextChar()) == 'r'
-                     && (c = nextChar()) == 'e'
-                     && (c = nextChar()) == 's'
-                     && (c = nextChar()) == 'e'
-                     && (c = nextChar()) == 'n'
-                     && (c = nextChar()) == 't')
-                    {
-                        return keywordOrIdentifier(PTokenId.PRESENT);
-                    }
-                    return finishIdentifier(c);
-
-                case 'r' :
-                    
-                    if ((c = nextChar()) == 'e') {
-                        switch (c = nextChar()) {
-                            case 'q' :
-                                if ((c = nextChar()) == 'u'
-                                        && (c = nextChar()) == 'i'
-                                        && (c = nextChar()) == 'r'
-                                        && (c = nextChar()) == 'e') {
-                                    return functionOrIdentifier(PTokenId.REQUIRE);
-                                }
-                                break;
-                            case 'a':
-                                if ((c = nextChar()) == 'l'
-                                        && (c = nextChar()) == 'i'
-                                        && (c = nextChar()) == 'z'
-                                        && (c = nextChar()) == 'e') {
-                                    return functionOrIdentifier(PTokenId.REALIZE);
-                                }
-                                break;
-                        }
-                    }
-                    return finishIdentifier(c);
-                case 's' :
-                    return finishIdentifier(c);
-                case 't' :
-                    switch (c = nextChar()) {
-                        case 'a' :
-                            if ((c = nextChar()) == 'g') {
-                                //TODO tagged
-                                return functionOrIdentifier(PTokenId.TAG);
-                            }
-                            break;
-                        case 'r' :
-                            if ((c = nextChar()) == 'u'
-                               && (c = nextChar()) == 'e')
-                            {
-                                return keywordOrIdentifier(PTokenId.TRUE);
-                            }
-                            break;
-                            
-                    }
-                    return finishIdentifier(c);
-                    
-                case 'u' :
-                    if ((c = nextChar()) == 'n') {
-                        switch (c = nextChar()) {
-                            case 'd':
-                                if ((c = nextChar()) == 'e'
-                                    && (c = nextChar()) == 'f')
-                                {
-                                    return keywordOrIdentifier(PTokenId.UNDEF);
-                                }
-                                break;
-                                
-                            case 'l':
-                                if ((c = nextChar()) == 'e'
-                                    && (c = nextChar()) == 's'
-                                    && (c = nextChar()) == 's')
-                                {
-                                    return keywordOrIdentifier(PTokenId.UNLESS);
-                                }
-                                break;
-                        }
-                    }
-                    return finishIdentifier(c);
-                case 'v' :
-                    return finishIdentifier(c);
-                    
-                case 'w' :
-                    if ((c = nextChar()) == 'a'
-                     && (c = nextChar()) == 'r' 
-                     && (c = nextChar()) == 'n' 
-                     && (c = nextChar()) == 'i' 
-                     && (c = nextChar()) == 'n' 
-                     && (c = nextChar()) == 'g') 
-                    {
-                        return functionOrIdentifier(PTokenId.WARNING);
-                    }
-                    return finishIdentifier(c);
-
-                // Rest of lowercase letters starting identifiers
+                // Lowercase letters, keywords and built-in functions are looked up in KEYWORDS
+                case 'a':
                 case 'b':
+                case 'c':
+                case 'd':
+                case 'e':
+                case 'f':
                 case 'g':
+                case 'h':
+                case 'i':
                 case 'j':
                 case 'k':
+                case 'l':
+                case 'm':
+                case 'n':
+                case 'o':
+                case 'p':
                 case 'q':
+                case 'r':
+                case 's':
+                case 't':
+                case 'u':
+                case 'v':
+                case 'w':
                 case 'x':
                 case 'y':
                 case 'z':
+                    return finishWord(c);
+
                 // Uppercase letters starting identifiers
                 case 'A':
                 case 'B':
@@ -571,6 +345,9 @@ public class PLexer implements Lexer<PTokenId>
                 case 0x1d:
                 case 0x1e:
                 case 0x1f:
+                    if (c == '\n' && startHeredocBody()) {
+                        return tokenFactory.createToken(PTokenId.WHITESPACE);
+                    }
                     return finishWhitespace();
                 case ' ':
                     c = nextChar();
@@ -580,7 +357,12 @@ public class PLexer implements Lexer<PTokenId>
                                ? tokenFactory.getFlyweightToken(PTokenId.WHITESPACE, " ")
                                : tokenFactory.createToken(PTokenId.WHITESPACE);
                     }
+                    if (c == '\n' && startHeredocBody()) {
+                        return tokenFactory.createToken(PTokenId.WHITESPACE);
+                    }
                     return finishWhitespace();
+                case '@':
+                    return finishHeredocHeader();
 
                 case EOF:
                     return null;
@@ -733,6 +515,30 @@ public class PLexer implements Lexer<PTokenId>
     }
     
 
+    /**
+     * walks the keyword trie while the read characters match, the characters following
+     * a complete keyword decide between keyword (or function) and identifier.
+     */
+    private Token<PTokenId> finishWord(int first)
+    {
+        int node = KEYWORDS.child(KeywordTrie.ROOT, first);
+        while (node != KeywordTrie.NONE)
+        {
+            PTokenId id = KEYWORDS.token(node);
+            if (id != null) {
+                return KEYWORDS.isFunction(node)
+                        ? functionOrIdentifier(id)
+                        : keywordOrIdentifier(id);
+            }
+            int c = nextChar();
+            node = KEYWORDS.child(node, c);
+            if (node == KeywordTrie.NONE) {
+                return finishIdentifier(c);
+            }
+        }
+        return finishIdentifier();
+    }
+
     private Token<PTokenId> keywordOrIdentifier(PTokenId keywordId)
     {
         return keywordOrIdentifier(keywordId, nextChar());
@@ -760,7 +566,8 @@ public class PLexer implements Lexer<PTokenId>
 
     private Token<PTokenId> functionOrIdentifier(PTokenId functionId, int c)
     {
-        int backupPoint = input.readLength() - 1;
+        //readLengthEOF counts a read EOF too, it has to be backed up as well
+        int backupPoint = input.readLengthEOF() - 1;
         // Check whether the given char is non-ident and if so then return keyword
         if (c == EOF || !Character.isJavaIdentifierPart(c = translateSurrogates(c)))
         {
@@ -771,14 +578,14 @@ public class PLexer implements Lexer<PTokenId>
                 if (c == EOF || !Character.isWhitespace(c))
                 {
                     if (c == '{' || c == '=') {
-                        input.backup(input.readLength() - backupPoint);
+                        input.backup(input.readLengthEOF() - backupPoint);
                         return finishIdentifier();
                     }
                     break;
                 }
                 c = nextChar();
             }
-            input.backup(input.readLength() - backupPoint);
+            input.backup(input.readLengthEOF() - backupPoint);
             return token(functionId);
         } else // c is identifier part
         {
@@ -786,27 +593,6 @@ public class PLexer implements Lexer<PTokenId>
         }
     }
     
-    private Token<PTokenId> textOperatorOrIdentifier(PTokenId textOpId)
-    {
-        return textOperatorOrIdentifier(textOpId, nextChar());
-    }
-    
-    
-    private Token<PTokenId> textOperatorOrIdentifier(PTokenId textOpId, int c)
-    {
-        // Check whether the given char is non-ident and if so then return keyword
-        if (c == EOF || !Character.isJavaIdentifierPart(c = translateSurrogates(c)))
-        {
-            // For surrogate 2 chars must be backed up
-            backup((c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) ? 2 : 1);
-            return token(textOpId);
-        } else // c is identifier part
-        {
-            return finishIdentifier();
-        }
-    }
-    
-    
     private Token<PTokenId> finishWhitespace()
     {
         while (true)
@@ -819,6 +605,9 @@ public class PLexer implements Lexer<PTokenId>
                 backup(1);
                 return tokenFactory.createToken(PTokenId.WHITESPACE);
             }
+            if (c == '\n' && startHeredocBody()) {
+                return tokenFactory.createToken(PTokenId.WHITESPACE);
+            }
         }
     }
 
@@ -906,7 +695,75 @@ private Token<PTokenId> finishNumberLiteral(int c, boolean inFraction) {
     @Override
     public Object state()
     {
-        return null;
+        if (heredoc != null) {
+            return HEREDOC_STATES + heredocIndex * STATES_PER_HEADER + (heredoc.isBody() ? HEREDOC_STATES : state);
+        }
+        return state == DEFAULT ? null : Integer.valueOf(state);
+    }
+
+    /**
+     * @(TAG) with optional quotes around the tag, :syntax and /escapes
+     */
+    private Token<PTokenId> finishHeredocHeader() {
+        if (input.read() == '(') {
+            int start = input.readLength();
+            while (true) {
+                int c = input.read();
+                if (c == ')') {
+                    HeredocState st = HeredocState.parseHeader(input.readText(start, input.readLength() - 1));
+                    if (st != null) {
+                        int index = headerIndex(st);
+                        if (index != -1) {
+                            heredoc = st;
+                            heredocIndex = index;
+                        }
+                        return tokenFactory.createToken(PTokenId.HEREDOC);
+                    }
+                    break;
+                }
+                if (c == '\n' || c == EOF) {
+                    break;
+                }
+            }
+        }
+        //virtual and exported resources, not handled
+        input.backup(input.readLengthEOF() - 1);
+        return token(PTokenId.ERROR);
+    }
+
+    /**
+     * called at the end of line, switches to body if a heredoc header was on the line
+     * @return true if heredoc body follows
+     */
+    private boolean startHeredocBody() {
+        if (heredoc != null && !heredoc.isBody()) {
+            heredoc = heredoc.startBody();
+            return true;
+        }
+        return false;
+    }
+
+    private Token<PTokenId> finishHeredocBody() {
+        HeredocState st = heredoc;
+        heredoc = null;
+        int lineStart = 0;
+        while (true) {
+            int c = input.read();
+            if (c == '\n' || c == EOF) {
+                int lineEnd = c == EOF ? input.readLength() : input.readLength() - 1;
+                if (st.isEnd(input.readText(lineStart, lineEnd))) {
+                    if (c == '\n') {
+                        input.backup(1);
+                    }
+                    return tokenFactory.createToken(PTokenId.HEREDOC);
+                }
+                if (c == EOF) {
+                    //unterminated
+                    return input.readLength() == 0 ? null : tokenFactory.createToken(PTokenId.HEREDOC);
+                }
+                lineStart = input.readLength();
+            }
+        }
     }
 
     @Override
@@ -940,23 +797,26 @@ private Token<PTokenId> finishNumberLiteral(int c, boolean inFraction) {
             }
         }
     }
-    private Token<PTokenId> finishMultiComment() {
+    private Token<PTokenId> finishMultiComment(boolean continued) {
         boolean candidate = false;
         int c;
         while (true) {
             c = nextChar();
             switch (c) {
-//                case '\r': consumeNewline();
-//                case '\n':
+                case '\r': consumeNewline();
+                case '\n':
+                    return part(PTokenId.COMMENT, IN_COMMENT, continued);
                 case EOF:
-                    return tokenFactory.createToken(PTokenId.COMMENT,
-                            input.readLength(), PartType.START);
+                    if (input.readLength() == 0) {
+                        return null;
+                    }
+                    return part(PTokenId.COMMENT, IN_COMMENT, continued);
                 case '*' : 
                     candidate = true; 
                     break;
                 case '/' : 
                     if (candidate) {
-                        return token(PTokenId.COMMENT);
+                        return finished(PTokenId.COMMENT, continued);
                     }
                     candidate = false;
                     break;
@@ -965,6 +825,45 @@ private Token<PTokenId> finishNumberLiteral(int c, boolean inFraction) {
             }
         }
     }
+
+    private Token<PTokenId> finishString(int mode, char quote, boolean continued) {
+        while (true) {
+            int c = nextChar();
+            switch (c) {
+                case '\\':
+                    nextChar(); // read escaped char
+                    break;
+                case '\r': consumeNewline();
+                case '\n':
+                    return part(PTokenId.STRING_LITERAL, mode, continued);
+                case EOF:
+                    if (input.readLength() == 0) {
+                        return null;
+                    }
+                    return part(PTokenId.STRING_LITERAL, mode, continued);
+                default:
+                    if (c == quote) {
+                        return finished(PTokenId.STRING_LITERAL, continued);
+                    }
+            }
+        }
+    }
+
+    /**
+     * line of a multi line construct that continues on the next line
+     */
+    private Token<PTokenId> part(PTokenId id, int mode, boolean continued) {
+        state = continued ? mode : mode + FIRST_PART;
+        return tokenFactory.createToken(id, input.readLength(), continued ? PartType.MIDDLE : PartType.START);
+    }
+
+    /**
+     * multi line construct or a single line one was terminated
+     */
+    private Token<PTokenId> finished(PTokenId id, boolean continued) {
+        state = continued ? AFTER_LAST_PART : DEFAULT;
+        return continued ? tokenFactory.createToken(id, input.readLength(), PartType.END) : token(id);
+    }
     
 
 }
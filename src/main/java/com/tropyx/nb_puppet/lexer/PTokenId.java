@@ -79,6 +79,8 @@ public enum PTokenId implements TokenId
     WHITESPACE(null, "whitespace"),
     STRING_LITERAL(null, "string"),
     REGEXP_LITERAL(null, "regexp"),
+    /** @(TAG) header as well as the whole body up to and including the end marker */
+    HEREDOC(null, "string"),
     VARIABLE(null, "variable-declaration"),
     
     /** ( **/
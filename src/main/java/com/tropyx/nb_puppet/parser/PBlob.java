@@ -18,5 +18,10 @@ public class PBlob extends PElement {
         this.endOffset = length;
     }
 
-    
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        PBlob copy = new PBlob(newParent, newOffset);
+        copy.endOffset = endOffset + newOffset - getOffset();
+        return copy;
+    }
 }
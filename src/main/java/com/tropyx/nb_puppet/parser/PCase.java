@@ -47,4 +47,17 @@ public class PCase extends PElement  {
         cases.put(cas, caseBody);
     }
 
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PCase(newParent, newOffset);
+    }
+
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        PCase orig = (PCase) original;
+        control = copyOf(orig.control, delta, copies);
+        for (Map.Entry<PBlob, PBlob> entry : orig.cases.entrySet()) {
+            cases.put(copyOf(entry.getKey(), delta, copies), copyOf(entry.getValue(), delta, copies));
+        }
+    }
 }
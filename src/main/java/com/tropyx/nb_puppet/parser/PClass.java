@@ -17,6 +17,8 @@
 
 package com.tropyx.nb_puppet.parser;
 
+import java.util.Map;
+
 public class PClass extends PElement implements PParamContainer {
     private PIdentifier name;
     private PClassRef inherits;
@@ -30,6 +32,10 @@ public class PClass extends PElement implements PParamContainer {
         return name.getName();
     }
 
+    public int getNameOffset() {
+        return name.getOffset();
+    }
+
     void setName(PIdentifier name) {
         this.name = name;
     }
@@ -58,5 +64,19 @@ public class PClass extends PElement implements PParamContainer {
         return super.toString() + "[" + name.getName() + "]";
     }
 
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PClass(newParent, newOffset);
+    }
 
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        PClass orig = (PClass) original;
+        name = copyOf(orig.name, delta, copies);
+        inherits = copyOf(orig.inherits, delta, copies);
+        params = new PClassParam[orig.params.length];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = copyOf(orig.params[i], delta, copies);
+        }
+    }
 }
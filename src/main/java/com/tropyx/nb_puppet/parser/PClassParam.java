@@ -17,9 +17,11 @@
 
 package com.tropyx.nb_puppet.parser;
 
+import java.util.Map;
+
 public class PClassParam extends PElement {
     private String type;
-    private final PVariableDefinition variable;
+    private PVariableDefinition variable;
     private PElement defaultValue;
     
     PClassParam(PElement parent, int offset, PVariableDefinition var) {
@@ -28,6 +30,13 @@ public class PClassParam extends PElement {
         this.variable.setParent(this);
     }
 
+    /**
+     * for {@link #copy}, the variable is set once the children are copied
+     */
+    private PClassParam(PElement parent, int offset) {
+        super(CLASS_PARAM, parent, offset);
+    }
+
     public String getTypeType() {
         return type;
     }
@@ -53,4 +62,17 @@ public class PClassParam extends PElement {
         return super.toString() + "[" + getTypeType() + " : " + variable.getName() + "]";
     }
 
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        PClassParam copy = new PClassParam(newParent, newOffset);
+        copy.type = type;
+        return copy;
+    }
+
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        PClassParam orig = (PClassParam) original;
+        variable = copyOf(orig.variable, delta, copies);
+        defaultValue = copyOf(orig.defaultValue, delta, copies);
+    }
 }
@@ -17,6 +17,8 @@
 
 package com.tropyx.nb_puppet.parser;
 
+import java.util.Map;
+
 public class PClassRef extends PElement {
     private PIdentifier name;
     
@@ -37,4 +39,13 @@ public class PClassRef extends PElement {
         return super.toString() + "[" + getName() + "]";
     }
 
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PClassRef(newParent, newOffset);
+    }
+
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        name = copyOf(((PClassRef) original).name, delta, copies);
+    }
 }
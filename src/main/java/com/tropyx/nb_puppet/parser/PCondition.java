@@ -17,6 +17,8 @@
 
 package com.tropyx.nb_puppet.parser;
 
+import java.util.Map;
+
 public class PCondition extends PElement  {
     
     private PBlob condition;
@@ -53,5 +55,16 @@ public class PCondition extends PElement  {
         this.otherwise = otherwise;
     }
 
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PCondition(newParent, newOffset);
+    }
 
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        PCondition orig = (PCondition) original;
+        condition = copyOf(orig.condition, delta, copies);
+        consequence = copyOf(orig.consequence, delta, copies);
+        otherwise = copyOf(orig.otherwise, delta, copies);
+    }
 }
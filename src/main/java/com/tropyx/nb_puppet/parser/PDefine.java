@@ -17,8 +17,11 @@
 
 package com.tropyx.nb_puppet.parser;
 
+import java.util.Map;
+
 public class PDefine extends PElement implements PParamContainer {
     private String name;
+    private int nameOffset;
     private PClassParam[] params = new PClassParam[0];
     
     public PDefine(PElement parent, int offset) {
@@ -29,8 +32,13 @@ public class PDefine extends PElement implements PParamContainer {
         return name;
     }
 
-    void setName(String name) {
+    public int getNameOffset() {
+        return nameOffset;
+    }
+
+    void setName(String name, int nameOffset) {
         this.name = name;
+        this.nameOffset = nameOffset;
     }
 
     @Override
@@ -49,5 +57,20 @@ public class PDefine extends PElement implements PParamContainer {
         return super.toString() + "[" + name + "]";
     }
 
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        PDefine copy = new PDefine(newParent, newOffset);
+        copy.name = name;
+        copy.nameOffset = nameOffset + newOffset - getOffset();
+        return copy;
+    }
 
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        PDefine orig = (PDefine) original;
+        params = new PClassParam[orig.params.length];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = copyOf(orig.params[i], delta, copies);
+        }
+    }
 }
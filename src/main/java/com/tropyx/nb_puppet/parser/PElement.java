@@ -20,6 +20,7 @@ package com.tropyx.nb_puppet.parser;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 public class PElement {
     
@@ -44,10 +45,17 @@ public class PElement {
     public static final int FUNCTION = 18;
     public static final int IDENTIFIER = 19;
 
+    private static final int UNKNOWN = -1;
+
     private final int type;    
     private final List<PElement> children = new ArrayList<>();
     private PElement parent;
     private final int offset;
+    private int cachedEndOffset = UNKNOWN;
+    /**
+     * only set on root elements of finished parse results
+     */
+    private PElementIndex index;
 
     public PElement(int type, PElement parent, int offset) {
         this.type = type;
@@ -73,6 +81,9 @@ public class PElement {
     }
 
     public PElement getChildAtOffset(int offset) {
+        if (index != null) {
+            return index.getChildAtOffset(this, offset);
+        }
         for (PElement child : getChildren()) {
             if (child.getOffset() <= offset && child.getEndOffset() >= offset) {
                 return child.getChildAtOffset(offset);
@@ -83,6 +94,9 @@ public class PElement {
 
     @SuppressWarnings("unchecked")
     public <T extends PElement> List<T> getChildrenOfType(Class<T> clazz, boolean recursive) {
+        if (index != null && recursive) {
+            return new ArrayList<>(index.getElementsOfType(clazz, this));
+        }
         List<T> toRet = new ArrayList<>();
         for (PElement ch : children) {
             if (clazz.equals(ch.getClass())) {
@@ -109,12 +123,73 @@ public class PElement {
         return offset;
     }
 
+    /**
+     * deep copy of the element and its subtree, used by incremental reparse when reusing subtrees
+     * of the previous result. The original stays untouched, tasks still working with the previous
+     * result keep a consistent tree.
+     * @param newParent parent of the copy, null for elements not attached to the tree
+     * @param delta added to all offsets
+     * @param copies originals mapped to their copies, filled in as the subtree gets copied
+     * @return the copy
+     */
+    final PElement copyTo(PElement newParent, int delta, Map<PElement, PElement> copies) {
+        PElement copy = copy(newParent, offset + delta);
+        copies.put(this, copy);
+        for (PElement ch : children) {
+            ch.copyTo(copy, delta, copies);
+        }
+        copy.copyReferences(this, delta, copies);
+        if (cachedEndOffset != UNKNOWN) {
+            copy.cachedEndOffset = cachedEndOffset + delta;
+        }
+        return copy;
+    }
+
+    /**
+     * @param newParent
+     * @param newOffset
+     * @return new element of the same class and with the same own values, without children
+     */
+    PElement copy(PElement newParent, int newOffset) {
+        return new PElement(type, newParent, newOffset);
+    }
+
+    /**
+     * points fields referencing other elements to the copies of these elements,
+     * called once the children are copied.
+     * @param original element this one is a copy of
+     * @param delta
+     * @param copies
+     */
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+    }
+
+    /**
+     * @return copy of the element made within the current {@link #copyTo} call, elements not
+     * attached to the tree get copied on demand
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends PElement> T copyOf(T element, int delta, Map<PElement, PElement> copies) {
+        if (element == null) {
+            return null;
+        }
+        PElement copy = copies.get(element);
+        if (copy == null) {
+            copy = element.copyTo(null, delta, copies);
+        }
+        return (T) copy;
+    }
+
     public int getEndOffset() {
-        int size = children.size();
-        if (size > 0) {
-            return children.get(size - 1).getEndOffset();
+        if (cachedEndOffset == UNKNOWN) {
+            int size = children.size();
+            if (size > 0) {
+                cachedEndOffset = children.get(size - 1).getEndOffset();
+            } else {
+                return getOffset(); //TODO??
+            }
         }
-        return getOffset(); //TODO??
+        return cachedEndOffset;
     }
     
     public int getType() {
@@ -125,8 +200,45 @@ public class PElement {
         return this.type == type;
     }
 
+    /**
+     * @return true for if/unless/case, their content might not be evaluated
+     */
+    public boolean isConditional() {
+        return type == CONDITION || type == CASE;
+    }
+
+    /**
+     * @return true if any ancestor is {@link #isConditional()}
+     */
+    public boolean isInsideConditional() {
+        PElement par = parent;
+        while (par != null) {
+            if (par.isConditional()) {
+                return true;
+            }
+            par = par.parent;
+        }
+        return false;
+    }
+
     private void addChild(PElement aThis) {
         children.add(aThis);
+        //ancestors may have cached an end offset derived from this element even when it has none cached
+        //itself, elements without children don't cache theirs
+        for (PElement el = this; el != null; el = el.parent) {
+            el.cachedEndOffset = UNKNOWN;
+        }
+    }
+
+    void setIndex(PElementIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * @return lookup index, only present on the root element of a finished parse
+     */
+    public PElementIndex getIndex() {
+        return index;
     }
 
     public String toStringRecursive() {
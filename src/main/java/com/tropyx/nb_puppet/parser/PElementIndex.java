@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup structures over the tree of a finished parse, computed on first use.
+ * For each element with children keeps the sorted child start offsets together with
+ * the running maximum of their end offsets, so finding the child at offset is a binary search
+ * per tree level instead of a linear scan computing end offsets over and over. Levels are
+ * built only for the elements an offset lookup passes through.
+ * Also buckets all elements by their class in document order, so that indexing, coloring
+ * and usage searches share one list per type instead of walking the tree repeatedly. The buckets
+ * take one walk over the tree, done when the first type query comes in.
+ */
+public final class PElementIndex {
+
+    private final PElement root;
+    private final Map<PElement, Level> levels = new IdentityHashMap<>();
+    private Map<Class<?>, Bucket> buckets;
+    /**
+     * preorder id and end of the subtree id range, for elements with children
+     */
+    private Map<PElement, int[]> ranges;
+
+    PElementIndex(PElement root) {
+        this.root = root;
+    }
+
+    private synchronized Level getLevel(PElement el) {
+        Level level = levels.get(el);
+        if (level == null) {
+            List<PElement> children = el.getChildren();
+            if (children.isEmpty()) {
+                return null;
+            }
+            level = new Level(children);
+            levels.put(el, level);
+        }
+        return level;
+    }
+
+    private synchronized Map<Class<?>, Bucket> getBuckets() {
+        if (buckets == null) {
+            buckets = new HashMap<>();
+            ranges = new IdentityHashMap<>();
+            build(root, 0);
+            for (Bucket b : buckets.values()) {
+                b.trim();
+            }
+        }
+        return buckets;
+    }
+
+    private int build(PElement el, int counter) {
+        int id = counter++;
+        //type queries are about elements below a scope, the root is never one of them
+        if (el != root) {
+            Bucket bucket = buckets.get(el.getClass());
+            if (bucket == null) {
+                bucket = new Bucket();
+                buckets.put(el.getClass(), bucket);
+            }
+            bucket.add(el, id);
+        }
+        List<PElement> children = el.getChildren();
+        if (!children.isEmpty()) {
+            for (PElement ch : children) {
+                counter = build(ch, counter);
+            }
+            ranges.put(el, new int[] {id, counter});
+        }
+        return counter;
+    }
+
+    public PElement getRoot() {
+        return root;
+    }
+
+    /**
+     * same semantics as {@link PElement#getChildAtOffset(int)}, the deepest element
+     * containing the offset, first matching child wins.
+     * @param from element to start the search at
+     * @param offset
+     * @return
+     */
+    public PElement getChildAtOffset(PElement from, int offset) {
+        PElement current = from;
+        while (true) {
+            Level level = getLevel(current);
+            if (level == null) {
+                return current;
+            }
+            int idx = level.find(offset);
+            if (idx < 0) {
+                return current;
+            }
+            current = current.getChildren().get(idx);
+        }
+    }
+
+    /**
+     * all elements of given class in the tree, in document order, root excluded.
+     * Same content as {@code getRoot().getChildrenOfType(clazz, true)} without walking the tree.
+     * @param <T>
+     * @param clazz exact class of the elements
+     * @return unmodifiable list
+     */
+    public <T extends PElement> List<T> getElementsOfType(Class<T> clazz) {
+        return getElementsOfType(clazz, root);
+    }
+
+    /**
+     * all elements of given class below the scope element, in document order.
+     * Same content as {@code scope.getChildrenOfType(clazz, true)} without walking the tree.
+     * @param <T>
+     * @param clazz exact class of the elements
+     * @param scope element of this index' tree
+     * @return unmodifiable list
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends PElement> List<T> getElementsOfType(Class<T> clazz, PElement scope) {
+        Bucket bucket = getBuckets().get(clazz);
+        int[] range;
+        synchronized (this) {
+            range = ranges.get(scope);
+        }
+        if (bucket == null || range == null) {
+            return Collections.emptyList();
+        }
+        if (scope == root) {
+            return (List<T>) bucket.view;
+        }
+        //ids are assigned in preorder, the subtree of scope is the id range (scope, subtreeEnd)
+        int from = bucket.firstIdAbove(range[0]);
+        int to = bucket.firstIdAbove(range[1] - 1);
+        return (List<T>) bucket.view.subList(from, to);
+    }
+
+    private static final class Bucket {
+        private final List<PElement> elements = new ArrayList<>();
+        private List<PElement> view;
+        private int[] ids = new int[8];
+
+        void add(PElement el, int id) {
+            if (elements.size() == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[elements.size()] = id;
+            elements.add(el);
+        }
+
+        void trim() {
+            ids = Arrays.copyOf(ids, elements.size());
+            view = Collections.unmodifiableList(elements);
+        }
+
+        /**
+         * @return index of first element with id greater than given id
+         */
+        int firstIdAbove(int id) {
+            int lo = 0;
+            int hi = ids.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ids[mid] <= id) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private static final class Level {
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] maxEnds;
+        /**
+         * children are almost always created in source order, if not we fall back to linear scan
+         */
+        private final boolean sorted;
+
+        Level(List<PElement> children) {
+            int size = children.size();
+            starts = new int[size];
+            ends = new int[size];
+            maxEnds = new int[size];
+            boolean sort = true;
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                PElement ch = children.get(i);
+                starts[i] = ch.getOffset();
+                ends[i] = ch.getEndOffset();
+                max = Math.max(max, ends[i]);
+                maxEnds[i] = max;
+                if (i > 0 && starts[i] < starts[i - 1]) {
+                    sort = false;
+                }
+            }
+            sorted = sort;
+        }
+
+        int find(int offset) {
+            if (!sorted) {
+                for (int i = 0; i < starts.length; i++) {
+                    if (starts[i] <= offset && ends[i] >= offset) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            //last child starting at or before offset
+            int lo = 0;
+            int hi = starts.length - 1;
+            int last = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (starts[mid] <= offset) {
+                    last = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (last < 0) {
+                return -1;
+            }
+            //first child reaching the offset, the running max is monotonic
+            lo = 0;
+            hi = last;
+            int first = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (maxEnds[mid] >= offset) {
+                    first = mid;
+                    hi = mid - 1;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return first;
+        }
+    }
+}
@@ -37,5 +37,8 @@ public class PFunction extends PElement {
         return super.toString() + "[" + name + "]";
     }
 
-
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PFunction(newParent, newOffset, name);
+    }
 }
@@ -41,5 +41,8 @@ public class PIdentifier extends PElement {
         return super.toString() + "[" + name + "]";
     }
 
-
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PIdentifier(newParent, newOffset, name);
+    }
 }
@@ -40,5 +40,10 @@ public class PNode extends PElement {
         return super.toString() + "[" + Arrays.toString(names) + "]";
     }
 
-
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        PNode copy = new PNode(newParent, newOffset);
+        copy.names = names;
+        return copy;
+    }
 }
@@ -19,6 +19,7 @@ package com.tropyx.nb_puppet.parser;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class PResource extends PElement {
     private PElement title;
@@ -54,5 +55,18 @@ public class PResource extends PElement {
     public String toString() {
         return super.toString() + "[" + resourceType + ']';
     }
-    
+
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PResource(newParent, newOffset, resourceType);
+    }
+
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        PResource orig = (PResource) original;
+        title = copyOf(orig.title, delta, copies);
+        for (PResourceAttribute attr : orig.atributes) {
+            atributes.add(copyOf(attr, delta, copies));
+        }
+    }
 }
@@ -17,6 +17,7 @@
 
 package com.tropyx.nb_puppet.parser;
 
+import java.util.Map;
 import org.netbeans.api.annotations.common.CheckForNull;
 
 public class PResourceAttribute extends PElement {
@@ -41,9 +42,20 @@ public class PResourceAttribute extends PElement {
         this.value = value;
     }
 
+
     @Override
     public String toString() {
         return super.toString() + "[" + name + "->" + (value != null ? value.getClass() : "null") + "]";
     }
-    
+
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PResourceAttribute(newParent, newOffset, name);
+    }
+
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        //value of the last attribute is not attached as child, gets copied on its own
+        value = copyOf(((PResourceAttribute) original).value, delta, copies);
+    }
 }
@@ -46,6 +46,14 @@ public class PString extends PElement {
         }
     }
 
+    /**
+     * for {@link #copy}, the variables are copied as children
+     */
+    private PString(PElement parent, int offset, PString original) {
+        super(STRING, parent, offset);
+        this.value = original.value;
+    }
+
     public String getValue() {
         return value;
     }
@@ -58,5 +66,9 @@ public class PString extends PElement {
     public String toString() {
         return super.toString() + "[" +  value +  ']';
     }
-    
+
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PString(newParent, newOffset, this);
+    }
 }
@@ -18,6 +18,7 @@
 package com.tropyx.nb_puppet.parser;
 
 import java.util.Locale;
+import java.util.Map;
 
 public class PTypeReference extends PElement {
 
@@ -59,4 +60,14 @@ public class PTypeReference extends PElement {
     public String toString() {
         return super.toString() + "[" + getResourceType() + "]";
     }
+
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PTypeReference(newParent, newOffset, resourceType);
+    }
+
+    @Override
+    void copyReferences(PElement original, int delta, Map<PElement, PElement> copies) {
+        title = copyOf(((PTypeReference) original).title, delta, copies);
+    }
 }
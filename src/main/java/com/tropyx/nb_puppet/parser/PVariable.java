@@ -43,5 +43,8 @@ public class PVariable extends PElement {
         return getOffset() + name.length();
     }
 
-
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PVariable(newParent, newOffset, name);
+    }
 }
@@ -42,4 +42,8 @@ public class PVariableDefinition extends PElement {
         return getOffset() + name.length();
     }
 
+    @Override
+    PElement copy(PElement newParent, int newOffset) {
+        return new PVariableDefinition(newParent, newOffset, name);
+    }
 }
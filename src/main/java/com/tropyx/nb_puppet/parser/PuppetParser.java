@@ -19,11 +19,15 @@ package com.tropyx.nb_puppet.parser;
 import com.tropyx.nb_puppet.lexer.PTokenId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.event.ChangeListener;
 import org.netbeans.api.annotations.common.NonNull;
 import org.netbeans.api.annotations.common.NullAllowed;
+import org.netbeans.api.lexer.PartType;
 import org.netbeans.api.lexer.Token;
 import org.netbeans.api.lexer.TokenSequence;
 import org.netbeans.modules.parsing.api.Snapshot;
@@ -34,20 +38,74 @@ import org.netbeans.modules.parsing.spi.SourceModificationEvent;
 
 class PuppetParser extends Parser {
 
-    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicBoolean cancelled;
 
     private PuppetParserResult result;
 
+    /**
+     * last result that was not cancelled midway, base for incremental reparse
+     */
+    private PuppetParserResult complete;
+
+    /**
+     * false if the last parse bailed out because of cancellation
+     */
+    private boolean finished;
+
+    /**
+     * end offsets of the top level elements of the current result, including the trailing
+     * tokens that got consumed while parsing them (eg. unterminated node names)
+     */
+    private Map<PElement, Integer> topLevelEnds = new IdentityHashMap<>();
+
     public PuppetParser() {
+        this(new AtomicBoolean());
+    }
+
+    /**
+     * @param cancelled flag shared with the caller, stops the parse when set
+     */
+    PuppetParser(AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
     }
 
     @Override
     public void parse(Snapshot snapshot, Task task, SourceModificationEvent event) throws ParseException {
 //        System.out.println("text" + snapshot.getText().toString());
-        result = doParse(snapshot, task);
-        System.out.println("AST:" + result.getRootNode().toStringRecursive());
+        try {
+            PuppetParserResult previous = complete;
+            Map<PElement, Integer> previousEnds = topLevelEnds;
+            PuppetParserResult parsed;
+            if (previous != null && event != null) {
+                parsed = doIncrementalParse(snapshot, previous);
+            } else {
+                parsed = doParse(snapshot, task);
+            }
+            if (!finished) {
+                //tasks must not see the partial tree, the next incremental parse
+                //has to start from the last complete one
+                result = null;
+                topLevelEnds = previousEnds;
+            } else {
+                result = parsed;
+                complete = parsed;
+            }
+        } finally {
+            //cleared once done, a cancel arriving before the parse started stops it as well
+            cancelled.set(false);
+        }
     }
 
+    /**
+     * @return false if the last parse bailed out because of cancellation
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return null when the last parse was cancelled
+     */
     @Override
     public Result getResult(Task task) throws ParseException {
         return result;
@@ -73,10 +131,103 @@ class PuppetParser extends Parser {
 
     private PuppetParserResult doParse(Snapshot snapshot, Task task) {
         TokenSequence<PTokenId> ts = (TokenSequence<PTokenId>) snapshot.getTokenHierarchy().tokenSequence();
+        return new PuppetParserResult(snapshot, parseTree(ts));
+    }
+
+    /**
+     * full parse of the token sequence, independent of the parsing api.
+     * @param ts
+     * @return root element
+     */
+    PElement parseTree(TokenSequence<PTokenId> ts) {
         ts.moveStart();
         final PElement root = new PElement(PElement.ROOT, null, 0 );
+        topLevelEnds = new IdentityHashMap<>();
+        parseTopLevel(root, ts, Collections.<PElement>emptyList(), 0);
+        return root;
+    }
+
+    /**
+     * Reparses only the top level elements touched by the modification. The changed region is
+     * computed by comparing the old and new snapshot text, which is exact no matter how many
+     * document changes the modification event coalesced.
+     * Elements ending before the change are copied as they are, elements starting after it are
+     * copied with shifted offsets once the reparse synchronizes with their start. The previous
+     * result is never modified, tasks still holding it keep a consistent tree and a cancelled
+     * reparse can start over from it.
+     */
+    private PuppetParserResult doIncrementalParse(Snapshot snapshot, PuppetParserResult previous) {
+        CharSequence oldText = previous.getSnapshot().getText();
+        CharSequence newText = snapshot.getText();
+        int oldLength = oldText.length();
+        int newLength = newText.length();
+        int max = Math.min(oldLength, newLength);
+        int changeStart = 0;
+        while (changeStart < max && oldText.charAt(changeStart) == newText.charAt(changeStart)) {
+            changeStart++;
+        }
+        int suffix = 0;
+        while (suffix < max - changeStart && oldText.charAt(oldLength - 1 - suffix) == newText.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+        int oldChangeEnd = oldLength - suffix;
+        int delta = newLength - oldLength;
+
+        Map<PElement, Integer> oldEnds = topLevelEnds;
+        topLevelEnds = new IdentityHashMap<>();
+        final PElement root = new PElement(PElement.ROOT, null, 0);
+        Map<PElement, PElement> copies = new IdentityHashMap<>();
+        List<PElement> oldChildren = new ArrayList<>(previous.getRootNode().getChildren());
+        int regionStart = 0;
+        int index = 0;
+        while (index < oldChildren.size()) {
+            PElement ch = oldChildren.get(index);
+            Integer end = oldEnds.get(ch);
+            if (end == null || end >= changeStart) {
+                break;
+            }
+            topLevelEnds.put(ch.copyTo(root, 0, copies), end);
+            regionStart = end;
+            index++;
+        }
+        List<PElement> reusable = new ArrayList<>();
+        for (; index < oldChildren.size(); index++) {
+            PElement ch = oldChildren.get(index);
+            if (ch.getOffset() >= oldChangeEnd && oldEnds.containsKey(ch)) {
+                reusable.add(ch);
+            }
+        }
+        TokenSequence<PTokenId> ts = (TokenSequence<PTokenId>) snapshot.getTokenHierarchy().tokenSequence();
+        ts.move(regionStart);
+        parseTopLevel(root, ts, reusable, delta, oldEnds);
+        return new PuppetParserResult(snapshot, root);
+    }
+
+    private void parseTopLevel(PElement root, TokenSequence<PTokenId> ts, List<PElement> reusable, int delta) {
+        parseTopLevel(root, ts, reusable, delta, Collections.<PElement, Integer>emptyMap());
+    }
+
+    private void parseTopLevel(PElement root, TokenSequence<PTokenId> ts, List<PElement> reusable, int delta, Map<PElement, Integer> oldEnds) {
+        int next = 0;
         Token<PTokenId> token = nextSkipWhitespaceComment(ts);
-        while (token != null && ts.isValid()) {
+        while (token != null && ts.isValid() && !cancelled.get()) {
+            if (next < reusable.size()) {
+                int offset = ts.offset();
+                while (next < reusable.size() && reusable.get(next).getOffset() + delta < offset) {
+                    next++;
+                }
+                if (next < reusable.size() && reusable.get(next).getOffset() + delta == offset
+                        && startsTopLevel(reusable.get(next), token)) {
+                    //we are in sync with the previous parse again, rest of the tree is unchanged
+                    Map<PElement, PElement> copies = new IdentityHashMap<>();
+                    for (PElement el : reusable.subList(next, reusable.size())) {
+                        topLevelEnds.put(el.copyTo(root, delta, copies), oldEnds.get(el) + delta);
+                    }
+                    finished = true;
+                    return;
+                }
+            }
+            int size = root.getChildren().size();
             if (token.id() == PTokenId.CLASS) {
                 parseClass(root, ts);
             } 
@@ -85,11 +236,30 @@ class PuppetParser extends Parser {
             } else if (token.id() == PTokenId.DEFINE) {
                 parseDefine(root, ts);
             }
+            if (root.getChildren().size() > size) {
+                Token<PTokenId> last = ts.token();
+                int end = last != null ? ts.offset() + last.length() : ts.offset();
+                for (PElement ch : root.getChildren().subList(size, root.getChildren().size())) {
+                    topLevelEnds.put(ch, end);
+                }
+            }
             token = nextSkipWhitespaceComment(ts);
             //TODO what about site.pp (without define/class/node)?
         }
+        finished = !cancelled.get();
+    }
 
-        return new PuppetParserResult(snapshot, root);
+    private static boolean startsTopLevel(PElement element, Token<PTokenId> token) {
+        switch (element.getType()) {
+            case PElement.CLASS:
+                return token.id() == PTokenId.CLASS;
+            case PElement.NODE:
+                return token.id() == PTokenId.NODE;
+            case PElement.DEFINE:
+                return token.id() == PTokenId.DEFINE;
+            default:
+                return false;
+        }
     }
 
     private Token<PTokenId> skipWhitespaceComment(TokenSequence<PTokenId> ts) {
@@ -131,8 +301,7 @@ class PuppetParser extends Parser {
         List<PTokenId> stops = Arrays.asList(stopTokens);
         while (token != null && !stops.contains(token.id())) {
             name.append(token.text().toString());
-            ts.moveNext();
-            token = ts.token();
+            token = ts.moveNext() ? ts.token() : null;
         }
         if (token == null) {
             return null;
@@ -140,6 +309,30 @@ class PuppetParser extends Parser {
         return name.toString();
     }
 
+    /**
+     * text of the string literal at current token, joining the per line parts of multi line strings.
+     * Leaves the sequence at the last part.
+     */
+    private String stringLiteral(TokenSequence<PTokenId> ts) {
+        Token<PTokenId> token = ts.token();
+        if (token.partType() != PartType.START) {
+            return token.text().toString();
+        }
+        StringBuilder sb = new StringBuilder(token.text());
+        while (ts.moveNext()) {
+            token = ts.token();
+            if (token.id() != PTokenId.STRING_LITERAL) {
+                ts.movePrevious();
+                break;
+            }
+            sb.append(token.text());
+            if (token.partType() != PartType.MIDDLE) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
     private PBlob fastForward(@NullAllowed PElement parent, TokenSequence<PTokenId> ts, PTokenId... stopTokens) {
         PBlob blob = new PBlob(parent, ts.offset());
         return fastForwardImpl(blob, ts, stopTokens);
@@ -153,7 +346,7 @@ class PuppetParser extends Parser {
         int parenCount = 0;
         boolean ignore = false;
 
-        while (token != null && (ignore || !stops.contains(token.id()))) {
+        while (token != null && (ignore || !stops.contains(token.id())) && !cancelled.get()) {
             if (null != token.id()) switch (token.id()) {
                 case LBRACE:
                     braceCount++;
@@ -174,8 +367,8 @@ class PuppetParser extends Parser {
                     parenCount--;
                     break;
                 case STRING_LITERAL:
-                    String val = token.text().toString();
                     int off = ts.offset();
+                    String val = stringLiteral(ts);
                     new PString(blob, off, val);
                     break;
                 case VARIABLE:
@@ -319,9 +512,10 @@ class PuppetParser extends Parser {
         if (null == nextSkipWhitespaceComment(ts)) {
             return;
         }
+        int nameOffset = ts.offset();
         String name = collectText(ts, PTokenId.WHITESPACE, PTokenId.LBRACE, PTokenId.LPAREN);
         if (name != null) {
-            pc.setName(name);
+            pc.setName(name, nameOffset);
             token = skipWhitespaceComment(ts);
             if (token != null && token.id() == PTokenId.LPAREN) {
                 //params
@@ -469,12 +663,13 @@ class PuppetParser extends Parser {
             if (token != null) {
                 PElement title;
                 if (token.id() == PTokenId.STRING_LITERAL) {
+                    int off = ts.offset();
+                    String tts = stringLiteral(ts);
                     if ("class".equals(type)) {
-                        String tts = token.text().toString();
-                        title = new PClassRef(null, ts.offset());
-                        ((PClassRef)title).setName(new PIdentifier(title, ts.offset() + 1, tts.substring(1, tts.length() - 1)));
+                        title = new PClassRef(null, off);
+                        ((PClassRef)title).setName(new PIdentifier(title, off + 1, tts.substring(1, tts.length() - 1)));
                     } else {
-                        title = new PString(null, ts.offset(), token.text().toString());
+                        title = new PString(null, off, tts);
                     }
                 } else if (token.id() == PTokenId.VARIABLE) {
                     title = new PVariable(null, ts.offset(), token.text().toString());
@@ -504,7 +699,7 @@ class PuppetParser extends Parser {
         String attr = null;
         PElement val = null;
         int off = 0;
-        while (token != null && token.id() != PTokenId.RBRACE) {
+        while (token != null && token.id() != PTokenId.RBRACE && !cancelled.get()) {
             if (attr == null && (token.id() == PTokenId.IDENTIFIER || token.id() == PTokenId.UNLESS)) {
                 off = ts.offset();
                 attr = token.text().toString();
@@ -542,7 +737,7 @@ class PuppetParser extends Parser {
         pcase.setControl(caseExpr);
         Token<PTokenId> token = ts.token();
         token = nextSkipWhitespaceComment(ts);
-        while (token != null && token.id() != PTokenId.RBRACE) {
+        while (token != null && token.id() != PTokenId.RBRACE && !cancelled.get()) {
             PBlob cas = fastForward(pcase, ts, PTokenId.COLON);
             token = nextSkipWhitespaceComment(ts);
             PBlob caseBody;
@@ -565,7 +760,7 @@ class PuppetParser extends Parser {
         cond.setConsequence(fastForward(cond, ts, PTokenId.RBRACE));
         nextSkipWhitespaceComment(ts);
         Token<PTokenId> token = ts.token();
-        while (token.id() == PTokenId.ELSE || (includeElseIf && token.id() == PTokenId.ELSIF)) {
+        while (token != null && !cancelled.get() && (token.id() == PTokenId.ELSE || (includeElseIf && token.id() == PTokenId.ELSIF))) {
             if (token.id() == PTokenId.ELSE) {
                 nextSkipWhitespaceComment(ts);
                 if (ts.token().id() == PTokenId.LBRACE) {
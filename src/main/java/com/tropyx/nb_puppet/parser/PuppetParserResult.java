@@ -22,10 +22,13 @@ import org.netbeans.modules.parsing.spi.Parser;
 
 public class PuppetParserResult extends Parser.Result {
     private final PElement root;
+    private final PElementIndex index;
 
     public PuppetParserResult(Snapshot _snapshot, PElement root) {
         super(_snapshot);
         this.root = root;
+        this.index = new PElementIndex(root);
+        root.setIndex(index);
     }
     
     @Override
@@ -37,4 +40,8 @@ public class PuppetParserResult extends Parser.Result {
         return root;
     }
 
+    public PElementIndex getIndex() {
+        return index;
+    }
+
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.parser;
+
+import com.tropyx.nb_puppet.lexer.PLangHierarchy;
+import com.tropyx.nb_puppet.lexer.PTokenId;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.netbeans.api.lexer.Language;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenSequence;
+
+/**
+ * Parses puppet sources outside of the parsing api (no Source, Snapshot or ParserManager),
+ * for batch tools, benchmarks and bulk searches. Produces the same tree as the editor parser,
+ * with the lookup index attached to the root.
+ * Safe to call from multiple threads, every call uses its own lexer and parser.
+ */
+public final class PuppetSourceParser {
+
+    private static final Language<PTokenId> LANGUAGE = new PLangHierarchy().language();
+
+    private PuppetSourceParser() {
+    }
+
+    /**
+     * @param text puppet manifest content
+     * @return root element, {@link PElement#getIndex()} is set
+     */
+    public static PElement parse(CharSequence text) {
+        return parseTokens(tokenSequence(text));
+    }
+
+    /**
+     * @param ts token sequence of puppet manifest, eg. one that was already lexed
+     * @return root element, {@link PElement#getIndex()} is set
+     */
+    public static PElement parseTokens(TokenSequence<PTokenId> ts) {
+        PElement root = new PuppetParser().parseTree(ts);
+        root.setIndex(new PElementIndex(root));
+        return root;
+    }
+
+    /**
+     * @param text puppet manifest content
+     * @param cancelled checked while parsing, can be set from another thread
+     * @return root element, {@link PElement#getIndex()} is set, or null when cancelled
+     */
+    public static PElement parse(CharSequence text, AtomicBoolean cancelled) {
+        PElement root = new PuppetParser(cancelled).parseTree(tokenSequence(text));
+        if (cancelled.get()) {
+            return null;
+        }
+        root.setIndex(new PElementIndex(root));
+        return root;
+    }
+
+    /**
+     * @param text puppet manifest content
+     * @return token sequence lexed lazily by {@link com.tropyx.nb_puppet.lexer.PLexer}
+     */
+    public static TokenSequence<PTokenId> tokenSequence(CharSequence text) {
+        TokenHierarchy<CharSequence> th = TokenHierarchy.create(text, LANGUAGE);
+        @SuppressWarnings("unchecked")
+        TokenSequence<PTokenId> ts = (TokenSequence<PTokenId>) th.tokenSequence();
+        return ts;
+    }
+
+    /**
+     * Parses the file content mapped into memory. Line separators are normalized to \n the way
+     * editor documents do, so offsets in the tree match offsets in the opened document.
+     * @param file UTF-8 encoded manifest
+     * @return root element, {@link PElement#getIndex()} is set
+     * @throws IOException
+     */
+    public static PElement parse(Path file) throws IOException {
+        return parse(read(file));
+    }
+
+    /**
+     * @param file UTF-8 encoded manifest
+     * @return file content with line separators normalized to \n
+     * @throws IOException
+     */
+    public static CharSequence read(Path file) throws IOException {
+        return read(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param file manifest
+     * @param encoding encoding of the file, eg. from {@code FileEncodingQuery}
+     * @return file content with line separators normalized to \n
+     * @throws IOException
+     */
+    public static CharSequence read(Path file, Charset encoding) throws IOException {
+        CharBuffer chars;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CharsetDecoder decoder = encoding.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            chars = decoder.decode(bytes);
+        }
+        return normalizeLineSeparators(chars);
+    }
+
+    /**
+     * @return the text with \r\n and \r replaced by \n, as in editor documents
+     */
+    public static CharSequence normalizeLineSeparators(CharSequence text) {
+        int length = text.length();
+        int first = -1;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\r') {
+                first = i;
+                break;
+            }
+        }
+        if (first == -1) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(text, 0, first);
+        for (int i = first; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                if (i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                sb.append('\n');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb;
+    }
+}
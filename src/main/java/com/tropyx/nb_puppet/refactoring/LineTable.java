@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.refactoring;
+
+import java.util.Arrays;
+import javax.swing.text.BadLocationException;
+
+/**
+ * line start offsets over file content, used to build result previews without loading editor documents.
+ * Expects line breaks normalized to '\n' like the offsets of the parser.
+ */
+final class LineTable {
+    private final CharSequence text;
+    private final int[] starts;
+    private final int lineCount;
+
+    private LineTable(CharSequence text, int[] starts, int lineCount) {
+        this.text = text;
+        this.starts = starts;
+        this.lineCount = lineCount;
+    }
+
+    static LineTable create(CharSequence text) {
+        int[] starts = new int[16];
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        return new LineTable(text, starts, count);
+    }
+
+    int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return zero based line index of the offset
+     */
+    int getLine(int offset) throws BadLocationException {
+        if (offset < 0 || offset > text.length()) {
+            throw new BadLocationException("Offset outside of content", offset);
+        }
+        int index = Arrays.binarySearch(starts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    int getLineStart(int offset) throws BadLocationException {
+        return starts[getLine(offset)];
+    }
+
+    /**
+     * @return offset of the line break ending the line or end of content
+     */
+    int getLineEnd(int offset) throws BadLocationException {
+        int line = getLine(offset);
+        return line + 1 < lineCount ? starts[line + 1] - 1 : text.length();
+    }
+
+    /**
+     * @return the line containing the offset with the given range in bold
+     */
+    String createHighlightedLine(int offset, int length) throws BadLocationException {
+        int rowStart = getLineStart(offset);
+        int rowEnd = getLineEnd(offset);
+        if (offset + length > rowEnd) {
+            throw new BadLocationException("Range spans multiple lines", offset + length);
+        }
+        return text.subSequence(rowStart, offset) +
+                "<b>" + text.subSequence(offset, offset + length) +
+                "</b>" + text.subSequence(offset + length, rowEnd);
+    }
+}
@@ -3,14 +3,20 @@ package com.tropyx.nb_puppet.refactoring;
 
 import com.tropyx.nb_puppet.PPConstants;
 import com.tropyx.nb_puppet.parser.PuppetParserResult;
+import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.EventQueue;
 import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.Document;
 import javax.swing.text.JTextComponent;
 import javax.swing.text.StyledDocument;
@@ -23,6 +29,7 @@ import org.netbeans.modules.parsing.spi.ParseException;
 import org.netbeans.modules.parsing.spi.Parser;
 import org.netbeans.modules.refactoring.api.AbstractRefactoring;
 import org.netbeans.modules.refactoring.api.Problem;
+import org.netbeans.modules.refactoring.api.RenameRefactoring;
 import org.netbeans.modules.refactoring.api.WhereUsedQuery;
 import org.netbeans.modules.refactoring.spi.ui.ActionsImplementationProvider;
 import org.netbeans.modules.refactoring.spi.ui.CustomRefactoringPanel;
@@ -65,6 +72,28 @@ public class PPActionsImplementationProvider extends ActionsImplementationProvid
 
     @Override
     public boolean canFindUsages(Lookup lookup) {
+        return isPuppetEditor(lookup);
+    }
+
+    @Override
+    public void doRename(Lookup lookup) {
+        EditorCookie ec = lookup.lookup(EditorCookie.class);
+        if (ec != null && isPuppetEditor(lookup)) {
+            RP.post(new TextComponentTask(ec) {
+                @Override
+                protected RefactoringUI createRefactoringUI(PPElementContext context) {
+                    return PPRenamePlugin.getOldName(context) != null ? new RenameUI(context) : null;
+                }
+            });
+        }
+    }
+
+    @Override
+    public boolean canRename(Lookup lookup) {
+        return isPuppetEditor(lookup);
+    }
+
+    private static boolean isPuppetEditor(Lookup lookup) {
         EditorCookie ec = lookup.lookup(EditorCookie.class);
         if (ec != null) {
             StyledDocument doc = ec.getDocument();
@@ -146,6 +175,104 @@ public class PPActionsImplementationProvider extends ActionsImplementationProvid
         }
     }
 
+    private static class RenameUI implements RefactoringUI {
+
+        private final JTextField name;
+        private final CustomRefactoringPanel panel;
+        private final RenameRefactoring refactoring;
+        private final String oldName;
+        private ChangeListener parent;
+
+        public RenameUI(PPElementContext context) {
+            this.refactoring = new RenameRefactoring(Lookups.fixed(context));
+            this.oldName = PPRenamePlugin.getOldName(context);
+            this.name = new JTextField(oldName, 30);
+            this.name.getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    fireChange();
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    fireChange();
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {
+                }
+            });
+            this.panel = new CustomRefactoringPanel() {
+
+                @Override
+                public void initialize() {
+                }
+
+                @Override
+                public Component getComponent() {
+                    JPanel p = new JPanel(new BorderLayout(6, 0));
+                    p.add(new JLabel("New Name:"), BorderLayout.WEST);
+                    p.add(name, BorderLayout.CENTER);
+                    return p;
+                }
+            };
+        }
+
+        private void fireChange() {
+            if (parent != null) {
+                parent.stateChanged(new ChangeEvent(this));
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "Rename " + oldName;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Rename " + oldName + " to " + name.getText();
+        }
+
+        @Override
+        public boolean isQuery() {
+            return false;
+        }
+
+        @Override
+        public CustomRefactoringPanel getPanel(ChangeListener parent) {
+            this.parent = parent;
+            return panel;
+        }
+
+        @Override
+        public Problem setParameters() {
+            refactoring.setNewName(name.getText().trim());
+            return refactoring.checkParameters();
+        }
+
+        @Override
+        public Problem checkParameters() {
+            refactoring.setNewName(name.getText().trim());
+            return refactoring.fastCheckParameters();
+        }
+
+        @Override
+        public boolean hasParameters() {
+            return true;
+        }
+
+        @Override
+        public AbstractRefactoring getRefactoring() {
+            return refactoring;
+        }
+
+        @Override
+        public HelpCtx getHelpCtx() {
+            return HelpCtx.DEFAULT_HELP;
+        }
+    }
+
     private static abstract class TextComponentTask extends UserTask implements Runnable {
 
         private final Document document;
@@ -1,6 +1,7 @@
 package com.tropyx.nb_puppet.refactoring;
 
 import org.netbeans.modules.refactoring.api.AbstractRefactoring;
+import org.netbeans.modules.refactoring.api.RenameRefactoring;
 import org.netbeans.modules.refactoring.api.WhereUsedQuery;
 import org.netbeans.modules.refactoring.spi.RefactoringPlugin;
 import org.netbeans.modules.refactoring.spi.RefactoringPluginFactory;
@@ -24,6 +25,11 @@ public class PPRefactoringFactory implements RefactoringPluginFactory {
                 return new PPWhereUsedQueryPlugin((WhereUsedQuery)refactoring);
             }
         }
+        if (refactoring instanceof RenameRefactoring) {
+            if (context != null) {
+                return new PPRenamePlugin((RenameRefactoring)refactoring);
+            }
+        }
         return null;
     }
 }
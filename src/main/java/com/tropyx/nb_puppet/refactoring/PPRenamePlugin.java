@@ -0,0 +1,423 @@
+
+package com.tropyx.nb_puppet.refactoring;
+
+import com.tropyx.nb_puppet.indexer.InheritanceGraph;
+import com.tropyx.nb_puppet.indexer.PPIndexer;
+import com.tropyx.nb_puppet.indexer.PPIndexerFactory;
+import com.tropyx.nb_puppet.parser.PDefine;
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PIdentifier;
+import com.tropyx.nb_puppet.parser.PResource;
+import com.tropyx.nb_puppet.parser.PTypeReference;
+import com.tropyx.nb_puppet.parser.PVariable;
+import com.tropyx.nb_puppet.parser.PVariableDefinition;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import javax.swing.text.BadLocationException;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexResult;
+import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport;
+import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport.Query;
+import org.netbeans.modules.refactoring.api.Problem;
+import org.netbeans.modules.refactoring.api.RenameRefactoring;
+import org.netbeans.modules.refactoring.spi.RefactoringElementsBag;
+import org.netbeans.modules.refactoring.spi.RefactoringPlugin;
+import org.openide.filesystems.FileObject;
+import org.openide.util.Exceptions;
+
+/**
+ * renames variables, classes and defines. Candidate files come from the index and are searched in parallel,
+ * the edits are applied by {@link PPRenameTransaction}.
+ */
+public class PPRenamePlugin implements RefactoringPlugin {
+    private static final Pattern VARIABLE_NAME = Pattern.compile("[a-z0-9_]\\w*");
+    private static final Pattern CLASS_NAME = Pattern.compile("[a-z][a-z0-9_]*(::[a-z][a-z0-9_]*)*");
+
+    private final RenameRefactoring refactoring;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    public PPRenamePlugin(RenameRefactoring refactoring) {
+        this.refactoring = refactoring;
+    }
+
+    /**
+     * @return the name as the user edits it, variables without the dollar and namespace
+     */
+    public static String getOldName(PPElementContext context) {
+        String var = PPWhereUsedQueryPlugin.getVariableName(context);
+        if (var != null) {
+            return shortName(var.substring(1));
+        }
+        String classRef = PPWhereUsedQueryPlugin.getClassRefName(context);
+        if (classRef != null) {
+            return classRef;
+        }
+        return getDefineName(context);
+    }
+
+    /**
+     * @return name of the define declared or used at caret, not verified against the index
+     */
+    static String getDefineName(PPElementContext context) {
+        PElement caretNode = context.getCaretNode();
+        if (caretNode.isType(PElement.DEFINE)) {
+            return ((PDefine) caretNode).getName();
+        }
+        String type = null;
+        if (caretNode.isType(PElement.RESOURCE)) {
+            type = ((PResource) caretNode).getResourceType();
+        } else if (caretNode.isType(PElement.REFERENCE)) {
+            type = ((PTypeReference) caretNode).getResourceType();
+        }
+        if (type != null && context.getCaretOffset() <= caretNode.getOffset() + type.length()) {
+            return type.toLowerCase(Locale.ENGLISH);
+        }
+        return null;
+    }
+
+    @Override
+    public Problem preCheck() {
+        PPElementContext context = getContext();
+        if (PPWhereUsedQueryPlugin.getVariableName(context) != null || PPWhereUsedQueryPlugin.getClassRefName(context) != null) {
+            return null;
+        }
+        String define = getDefineName(context);
+        if (define == null) {
+            return new Problem(true, "Rename only works on variables, classes and defines");
+        }
+        try {
+            QuerySupport qs = PPIndexerFactory.getQuerySupportFor(context.getDocument(), true);
+            if (qs.query(PPIndexer.FLD_DEFINE, define, QuerySupport.Kind.EXACT).isEmpty()) {
+                return new Problem(true, define + " is not a define of this project");
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        return null;
+    }
+
+    @Override
+    public Problem fastCheckParameters() {
+        PPElementContext context = getContext();
+        String newName = refactoring.getNewName();
+        if (newName == null || newName.isEmpty()) {
+            return new Problem(true, "New name is empty");
+        }
+        if (newName.equals(getOldName(context))) {
+            return new Problem(true, "New name is the same as the old one");
+        }
+        boolean variable = PPWhereUsedQueryPlugin.getVariableName(context) != null;
+        if (!(variable ? VARIABLE_NAME : CLASS_NAME).matcher(newName).matches()) {
+            return new Problem(true, newName + " is not a valid " + (variable ? "variable" : "class or define") + " name");
+        }
+        return null;
+    }
+
+    @Override
+    public Problem checkParameters() {
+        PPElementContext context = getContext();
+        if (PPWhereUsedQueryPlugin.getVariableName(context) != null) {
+            return null;
+        }
+        try {
+            QuerySupport qs = PPIndexerFactory.getQuerySupportFor(context.getDocument(), true);
+            if (!qs.query(PPIndexer.FLD_ROOT, refactoring.getNewName(), QuerySupport.Kind.EXACT).isEmpty()) {
+                return new Problem(true, refactoring.getNewName() + " already exists");
+            }
+            String classRef = PPWhereUsedQueryPlugin.getClassRefName(context);
+            if (classRef != null) {
+                //the rename only edits content, the manifest autoloading the class stays where it is
+                String oldPath = autoloadPath(classRef);
+                for (IndexResult res : qs.query(PPIndexer.FLD_ROOT, classRef, QuerySupport.Kind.EXACT)) {
+                    FileObject file = res.getFile();
+                    if (file != null && file.getPath().endsWith("/" + oldPath)) {
+                        return new Problem(false, "The file " + oldPath + " is not renamed, move it to "
+                                + autoloadPath(refactoring.getNewName()) + " for autoloading to find the class");
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        return null;
+    }
+
+    @Override
+    public Problem prepare(final RefactoringElementsBag elements) {
+        if (cancelled.get()) {
+            return null;
+        }
+        PPElementContext context = getContext();
+        final String newName = refactoring.getNewName();
+        final PPRenameTransaction transaction = new PPRenameTransaction();
+        try {
+            QuerySupport qs = PPIndexerFactory.getQuerySupportFor(context.getDocument(), true);
+            Query.Factory qf = qs.getQueryFactory();
+            String var = PPWhereUsedQueryPlugin.getVariableName(context);
+            final String classRef = PPWhereUsedQueryPlugin.getClassRefName(context);
+            final String define = getDefineName(context);
+            if (var != null) {
+                final List<String> names = new ArrayList<>();
+                InheritanceGraph graph = PPIndexerFactory.getInheritanceGraphFor(context.getDocument(), true);
+                Query q = PPWhereUsedQueryPlugin.collectVariableCandidateNames(qs, graph, PPWhereUsedQueryPlugin.getCurrentName(context), var.substring(1), names);
+                final Map<FileObject, Set<String>> scopes = new LinkedHashMap<>();
+                for (IndexResult res : q.execute(PPIndexer.FLD_ROOT)) {
+                    Set<String> roots = scopes.get(res.getFile());
+                    if (roots == null) {
+                        roots = new HashSet<>();
+                        scopes.put(res.getFile(), roots);
+                    }
+                    roots.add(res.getValue(PPIndexer.FLD_ROOT));
+                }
+                final String oldName = shortName(var.substring(1));
+                renameInFiles(elements, transaction, scopes.keySet(), new Renamer() {
+                    @Override
+                    public void rename(FileObject file, PElement root, Edits edits) {
+                        renameVariables(root, PPWhereUsedQueryPlugin.getScopes(root, scopes.get(file)), names, oldName, newName, edits);
+                    }
+                });
+            } else if (classRef != null) {
+                Query q = qf.or(
+                        qf.field(PPIndexer.FLD_CLASSREF, classRef, QuerySupport.Kind.EXACT),
+                        qf.field(PPIndexer.FLD_CLASS, classRef, QuerySupport.Kind.EXACT),
+                        qf.field(PPIndexer.FLD_VARREF, classRef + "::", QuerySupport.Kind.PREFIX),
+                        qf.field(PPIndexer.FLD_VARREF, "::" + classRef + "::", QuerySupport.Kind.PREFIX)
+                );
+                renameInFiles(elements, transaction, files(q), new Renamer() {
+                    @Override
+                    public void rename(FileObject file, PElement root, Edits edits) {
+                        renameClass(root, classRef, newName, edits);
+                    }
+                });
+            } else if (define != null) {
+                Query q = qf.or(
+                        qf.field(PPIndexer.FLD_DEFINE, define, QuerySupport.Kind.EXACT),
+                        qf.field(PPIndexer.FLD_RESOURCE, define, QuerySupport.Kind.EXACT),
+                        qf.field(PPIndexer.FLD_RESOURCE, capitalize(define), QuerySupport.Kind.EXACT)
+                );
+                renameInFiles(elements, transaction, files(q), new Renamer() {
+                    @Override
+                    public void rename(FileObject file, PElement root, Edits edits) {
+                        renameDefine(root, define, newName, edits);
+                    }
+                });
+            } else {
+                return new Problem(true, "Rename only works on variables, classes and defines");
+            }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        if (!cancelled.get() && !transaction.isEmpty()) {
+            elements.registerTransaction(transaction);
+        }
+        return null;
+    }
+
+    @Override
+    public void cancelRequest() {
+        cancelled.set(true);
+    }
+
+    private PPElementContext getContext() {
+        return refactoring.getRefactoringSource().lookup(PPElementContext.class);
+    }
+
+    private static Set<FileObject> files(Query q) throws IOException {
+        Set<FileObject> files = new LinkedHashSet<>();
+        for (IndexResult res : q.execute(PPIndexer.FLD_ROOT)) {
+            files.add(res.getFile());
+        }
+        return files;
+    }
+
+    /**
+     * @param scopes classes and defines of the file where the variable is visible
+     * @param names the variable names as used in the scopes, without the dollar
+     * @param oldName short name of the variable, without the dollar
+     */
+    static void renameVariables(PElement root, List<PElement> scopes, List<String> names, String oldName, String newName, Edits edits) {
+        for (PElement scope : scopes) {
+            for (PVariable v : root.getIndex().getElementsOfType(PVariable.class, scope)) {
+                renameVariable(v.getOffset(), v.getName(), names, oldName, newName, edits);
+            }
+            for (PVariableDefinition v : root.getIndex().getElementsOfType(PVariableDefinition.class, scope)) {
+                renameVariable(v.getOffset(), v.getName(), names, oldName, newName, edits);
+            }
+        }
+    }
+
+    /**
+     * class declarations, references including {@code Class['name']} and qualified variables of the class
+     */
+    static void renameClass(PElement root, String classRef, String newName, Edits edits) {
+        for (PIdentifier id : root.getIndex().getElementsOfType(PIdentifier.class)) {
+            if (classRef.equals(id.getName()) &&
+                    (id.getParent().isType(PElement.CLASS) || id.getParent().isType(PElement.CLASS_REF))) {
+                edits.add(id.getOffset(), classRef, newName);
+            }
+        }
+        //qualified variables of the class
+        for (PVariable v : root.getIndex().getElementsOfType(PVariable.class)) {
+            String name = v.getName().substring(1);
+            int offset = v.getOffset() + 1;
+            if (name.startsWith("::")) {
+                name = name.substring(2);
+                offset += 2;
+            }
+            if (name.lastIndexOf("::") == classRef.length() && name.startsWith(classRef)) {
+                edits.add(offset, classRef, newName);
+            }
+        }
+    }
+
+    /**
+     * define declarations, resources of the defined type and references to them
+     */
+    static void renameDefine(PElement root, String define, String newName, Edits edits) {
+        for (PDefine def : root.getChildrenOfType(PDefine.class, false)) {
+            if (define.equals(def.getName())) {
+                edits.add(def.getNameOffset(), define, newName);
+            }
+        }
+        for (PResource res : root.getIndex().getElementsOfType(PResource.class)) {
+            renameType(res.getOffset(), res.getResourceType(), define, newName, edits);
+        }
+        for (PTypeReference ref : root.getIndex().getElementsOfType(PTypeReference.class)) {
+            renameType(ref.getOffset(), ref.getResourceType(), define, newName, edits);
+        }
+    }
+
+    private static void renameVariable(int offset, String name, List<String> names, String oldName, String newName, Edits edits) {
+        if (names.contains(name.substring(1))) {
+            edits.add(offset + name.length() - oldName.length(), oldName, newName);
+        }
+    }
+
+    private static void renameType(int offset, String type, String define, String newName, Edits edits) {
+        if (define.equals(type)) {
+            edits.add(offset, type, newName);
+        } else if (capitalize(define).equals(type)) {
+            edits.add(offset, type, capitalize(newName));
+        }
+    }
+
+    /**
+     * @return path of the manifest puppet autoloads the class from, relative to the modules directory,
+     * eg. {@code foo/manifests/init.pp} for {@code foo} and {@code foo/manifests/bar/baz.pp} for {@code foo::bar::baz}
+     */
+    static String autoloadPath(String className) {
+        String[] segments = className.split("::");
+        StringBuilder sb = new StringBuilder(segments[0]).append("/manifests/");
+        if (segments.length == 1) {
+            sb.append("init");
+        }
+        for (int i = 1; i < segments.length; i++) {
+            if (i > 1) {
+                sb.append('/');
+            }
+            sb.append(segments[i]);
+        }
+        return sb.append(".pp").toString();
+    }
+
+    private static String shortName(String var) {
+        int index = var.lastIndexOf("::");
+        return index >= 0 ? var.substring(index + 2) : var;
+    }
+
+    /**
+     * @return the name as used in resource references, eg. {@code Foo::Bar}
+     */
+    static String capitalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (String segment : name.split("::", -1)) {
+            if (sb.length() > 0) {
+                sb.append("::");
+            }
+            if (!segment.isEmpty()) {
+                sb.append(Character.toUpperCase(segment.charAt(0))).append(segment, 1, segment.length());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * collects the edits of one parsed candidate file.
+     */
+    private interface Renamer {
+        void rename(FileObject file, PElement root, Edits edits);
+    }
+
+    /**
+     * edits collected in one file, without preview elements
+     */
+    static final class Edits {
+        private final CharSequence text;
+        private final List<PPRenameTransaction.Edit> edits = new ArrayList<>();
+        private final Set<Integer> offsets = new HashSet<>();
+
+        Edits(CharSequence text) {
+            this.text = text;
+        }
+
+        /**
+         * skips occurrences where the text doesn't match the old name and duplicates
+         */
+        void add(int offset, String oldText, String newText) {
+            int end = offset + oldText.length();
+            if (offset < 0 || end > text.length() || !oldText.contentEquals(text.subSequence(offset, end)) || !offsets.add(offset)) {
+                return;
+            }
+            edits.add(new PPRenameTransaction.Edit(offset, oldText, newText, null));
+        }
+
+        /**
+         * @return edits sorted by offset
+         */
+        List<PPRenameTransaction.Edit> getEdits() {
+            Collections.sort(edits, PPRenameTransaction.BY_OFFSET);
+            return edits;
+        }
+    }
+
+    private void renameInFiles(final RefactoringElementsBag elements, final PPRenameTransaction transaction, Set<FileObject> files, final Renamer renamer) {
+        PPWhereUsedQueryPlugin.visitFiles(files, cancelled, true, new PPWhereUsedQueryPlugin.FileVisitor() {
+            @Override
+            public void visit(FileObject file, CharSequence text, PElement root) throws BadLocationException {
+                Edits edits = new Edits(text);
+                renamer.rename(file, root, edits);
+                if (edits.getEdits().isEmpty()) {
+                    return;
+                }
+                LineTable lines = LineTable.create(text);
+                List<PPWhereUsedElement> previews = new ArrayList<>();
+                List<PPRenameTransaction.Edit> fileEdits = new ArrayList<>();
+                for (PPRenameTransaction.Edit edit : edits.getEdits()) {
+                    int length = edit.getOldText().length();
+                    String line = lines.createHighlightedLine(edit.getOffset(), length);
+                    PPWhereUsedElement element = new PPWhereUsedElement(line.trim(), file, edit.getOffset(), length);
+                    previews.add(element);
+                    fileEdits.add(edit.withElement(element));
+                }
+                synchronized (elements) {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                    for (PPWhereUsedElement element : previews) {
+                        elements.add(refactoring, element);
+                    }
+                }
+                transaction.addEdits(file, fileEdits);
+            }
+        });
+    }
+}
@@ -0,0 +1,277 @@
+
+package com.tropyx.nb_puppet.refactoring;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.StyledDocument;
+import org.netbeans.api.queries.FileEncodingQuery;
+import org.netbeans.modules.refactoring.api.Problem;
+import org.netbeans.modules.refactoring.spi.Transaction;
+import org.openide.DialogDisplayer;
+import org.openide.NotifyDescriptor;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileSystem;
+import org.openide.filesystems.FileUtil;
+import org.openide.text.CloneableEditorSupport;
+import org.openide.text.NbDocument;
+
+/**
+ * applies the edits of a rename. Open files are changed in their editor documents,
+ * closed files are rewritten in one atomic filesystem action and restored from their original bytes on rollback.
+ * When a file cannot be written the whole rename is rolled back and reported.
+ */
+class PPRenameTransaction implements Transaction {
+    private static final Logger LOG = Logger.getLogger(PPRenameTransaction.class.getName());
+
+    private final Map<FileObject, List<Edit>> edits = new LinkedHashMap<>();
+    private final Map<FileObject, byte[]> backups = new LinkedHashMap<>();
+    private final Map<StyledDocument, List<Edit>> documentEdits = new LinkedHashMap<>();
+    private Problem problem;
+
+    /**
+     * replacement of the old name at an offset of the parsed content, line breaks count as one character.
+     */
+    static final class Edit {
+        private final int offset;
+        private final String oldText;
+        private final String newText;
+        private final PPWhereUsedElement element;
+
+        Edit(int offset, String oldText, String newText, PPWhereUsedElement element) {
+            this.offset = offset;
+            this.oldText = oldText;
+            this.newText = newText;
+            this.element = element;
+        }
+
+        int getOffset() {
+            return offset;
+        }
+
+        String getOldText() {
+            return oldText;
+        }
+
+        /**
+         * @return the same replacement shown in the preview as given element
+         */
+        Edit withElement(PPWhereUsedElement element) {
+            return new Edit(offset, oldText, newText, element);
+        }
+
+        /**
+         * @return false when the user excluded the occurrence in the preview
+         */
+        boolean isEnabled() {
+            return element == null || element.isEnabled();
+        }
+    }
+
+    static final Comparator<Edit> BY_OFFSET = new Comparator<Edit>() {
+        @Override
+        public int compare(Edit o1, Edit o2) {
+            return Integer.compare(o1.offset, o2.offset);
+        }
+    };
+
+    synchronized void addEdits(FileObject file, List<Edit> fileEdits) {
+        List<Edit> sorted = new ArrayList<>(fileEdits);
+        Collections.sort(sorted, BY_OFFSET);
+        edits.put(file, sorted);
+    }
+
+    synchronized boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    @Override
+    public synchronized void commit() {
+        problem = null;
+        final List<FileObject> closed = new ArrayList<>();
+        for (Map.Entry<FileObject, List<Edit>> entry : edits.entrySet()) {
+            List<Edit> enabled = enabledEdits(entry.getKey());
+            if (enabled.isEmpty()) {
+                continue;
+            }
+            CloneableEditorSupport ces = PPWhereUsedQueryPlugin.getEditorSupport(entry.getKey());
+            Document doc = ces != null ? ces.getDocument() : null;
+            if (doc instanceof StyledDocument) {
+                applyToDocument((StyledDocument) doc, enabled);
+            } else {
+                closed.add(entry.getKey());
+            }
+        }
+        if (closed.isEmpty()) {
+            return;
+        }
+        final FileObject[] current = new FileObject[1];
+        try {
+            FileUtil.runAtomicAction(new FileSystem.AtomicAction() {
+                @Override
+                public void run() throws IOException {
+                    for (FileObject file : closed) {
+                        current[0] = file;
+                        byte[] original = file.asBytes();
+                        Charset encoding = FileEncodingQuery.getEncoding(file);
+                        String updated = apply(new String(original, encoding), enabledEdits(file));
+                        //before writing, a failed write can leave the file truncated
+                        backups.put(file, original);
+                        write(file, updated.getBytes(encoding));
+                    }
+                }
+            });
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Cannot rewrite files for rename", ex);
+            rollback();
+            problem = new Problem(true, "Rename was reverted, cannot write " + current[0].getPath() + ": " + ex.getLocalizedMessage());
+            DialogDisplayer.getDefault().notifyLater(new NotifyDescriptor.Message(problem.getMessage(), NotifyDescriptor.ERROR_MESSAGE));
+        }
+    }
+
+    /**
+     * @return why the last commit was reverted, null when it succeeded
+     */
+    synchronized Problem getProblem() {
+        return problem;
+    }
+
+    @Override
+    public synchronized void rollback() {
+        for (Map.Entry<StyledDocument, List<Edit>> entry : documentEdits.entrySet()) {
+            revertDocument(entry.getKey(), entry.getValue());
+        }
+        documentEdits.clear();
+        if (backups.isEmpty()) {
+            return;
+        }
+        try {
+            FileUtil.runAtomicAction(new FileSystem.AtomicAction() {
+                @Override
+                public void run() throws IOException {
+                    for (Map.Entry<FileObject, byte[]> entry : backups.entrySet()) {
+                        write(entry.getKey(), entry.getValue());
+                    }
+                }
+            });
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Cannot restore files after rename", ex);
+        }
+        backups.clear();
+    }
+
+    private List<Edit> enabledEdits(FileObject file) {
+        List<Edit> enabled = new ArrayList<>();
+        for (Edit edit : edits.get(file)) {
+            if (edit.isEnabled()) {
+                enabled.add(edit);
+            }
+        }
+        return enabled;
+    }
+
+    private void applyToDocument(final StyledDocument doc, final List<Edit> fileEdits) {
+        final List<Edit> applied = new ArrayList<>();
+        try {
+            NbDocument.runAtomicAsUser(doc, new Runnable() {
+                @Override
+                public void run() {
+                    //backwards, the offsets of the remaining edits stay valid
+                    for (int i = fileEdits.size() - 1; i >= 0; i--) {
+                        Edit edit = fileEdits.get(i);
+                        try {
+                            if (!edit.oldText.equals(doc.getText(edit.offset, edit.oldText.length()))) {
+                                LOG.log(Level.INFO, "Document changed since the rename was prepared, skipping offset {0}", edit.offset);
+                                continue;
+                            }
+                            doc.remove(edit.offset, edit.oldText.length());
+                            doc.insertString(edit.offset, edit.newText, null);
+                            applied.add(0, edit);
+                        } catch (BadLocationException ex) {
+                            LOG.log(Level.INFO, null, ex);
+                        }
+                    }
+                }
+            });
+        } catch (BadLocationException ex) {
+            LOG.log(Level.INFO, null, ex);
+        }
+        documentEdits.put(doc, applied);
+    }
+
+    private void revertDocument(final StyledDocument doc, final List<Edit> applied) {
+        try {
+            NbDocument.runAtomicAsUser(doc, new Runnable() {
+                @Override
+                public void run() {
+                    int[] shifted = new int[applied.size()];
+                    int delta = 0;
+                    for (int i = 0; i < applied.size(); i++) {
+                        Edit edit = applied.get(i);
+                        shifted[i] = edit.offset + delta;
+                        delta += edit.newText.length() - edit.oldText.length();
+                    }
+                    for (int i = applied.size() - 1; i >= 0; i--) {
+                        Edit edit = applied.get(i);
+                        try {
+                            doc.remove(shifted[i], edit.newText.length());
+                            doc.insertString(shifted[i], edit.oldText, null);
+                        } catch (BadLocationException ex) {
+                            LOG.log(Level.INFO, null, ex);
+                        }
+                    }
+                }
+            });
+        } catch (BadLocationException ex) {
+            LOG.log(Level.INFO, null, ex);
+        }
+    }
+
+    private static void write(FileObject file, byte[] content) throws IOException {
+        try (OutputStream os = file.getOutputStream()) {
+            os.write(content);
+        }
+    }
+
+    /**
+     * applies edits to the raw file content, keeping its line separators.
+     * @param raw file content as on disk
+     * @param fileEdits sorted by offset, offsets count a line separator as one character
+     * @return updated content, edits whose old text doesn't match are skipped
+     */
+    static String apply(CharSequence raw, List<Edit> fileEdits) {
+        StringBuilder sb = new StringBuilder(raw.length());
+        int rawPos = 0;
+        int pos = 0;
+        for (Edit edit : fileEdits) {
+            //copy up to the edit, translating the offset
+            while (pos < edit.offset && rawPos < raw.length()) {
+                char c = raw.charAt(rawPos++);
+                sb.append(c);
+                if (c == '\r' && rawPos < raw.length() && raw.charAt(rawPos) == '\n') {
+                    sb.append('\n');
+                    rawPos++;
+                }
+                pos++;
+            }
+            int end = rawPos + edit.oldText.length();
+            if (pos == edit.offset && end <= raw.length() && edit.oldText.contentEquals(raw.subSequence(rawPos, end))) {
+                sb.append(edit.newText);
+                rawPos = end;
+                pos += edit.oldText.length();
+            }
+        }
+        sb.append(raw, rawPos, raw.length());
+        return sb.toString();
+    }
+}
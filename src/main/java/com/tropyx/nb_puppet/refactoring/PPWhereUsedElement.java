@@ -1,21 +1,38 @@
 
 package com.tropyx.nb_puppet.refactoring;
 
+import javax.swing.text.Position;
 import org.netbeans.modules.refactoring.spi.SimpleRefactoringElementImplementation;
 import org.openide.filesystems.FileObject;
+import org.openide.text.CloneableEditorSupport;
 import org.openide.text.PositionBounds;
 import org.openide.util.Lookup;
 import org.openide.util.lookup.Lookups;
 
 public class PPWhereUsedElement extends SimpleRefactoringElementImplementation{
-    private final PositionBounds bounds;
     private final FileObject file;
     private final String text;
+    private final int offset;
+    private final int length;
+    private final CloneableEditorSupport editorSupport;
+    /**
+     * created on first access, position refs are only needed once the result gets shown or opened
+     */
+    private PositionBounds bounds;
 
-    public PPWhereUsedElement(String text, FileObject file, PositionBounds bounds) {
+    /**
+     * @param file has to have editor support, {@link PPWhereUsedQueryPlugin#visitFiles} skips files without
+     * @throws IllegalArgumentException when the file cannot be opened in an editor
+     */
+    public PPWhereUsedElement(String text, FileObject file, int offset, int length) {
         this.text = text;
         this.file = file;
-        this.bounds = bounds;
+        this.offset = offset;
+        this.length = length;
+        this.editorSupport = PPWhereUsedQueryPlugin.getEditorSupport(file);
+        if (editorSupport == null) {
+            throw new IllegalArgumentException("No editor support for " + file);
+        }
     }
 
     @Override
@@ -43,7 +60,11 @@ public class PPWhereUsedElement extends SimpleRefactoringElementImplementation{
     }
 
     @Override
-    public PositionBounds getPosition() {
+    public synchronized PositionBounds getPosition() {
+        if (bounds == null) {
+            bounds = new PositionBounds(editorSupport.createPositionRef(offset, Position.Bias.Forward),
+                    editorSupport.createPositionRef(offset + length, Position.Bias.Backward));
+        }
         return bounds;
     }
 
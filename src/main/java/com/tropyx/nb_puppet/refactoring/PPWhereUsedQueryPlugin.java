@@ -1,23 +1,40 @@
 
 package com.tropyx.nb_puppet.refactoring;
 
+import com.tropyx.nb_puppet.completion.PCompletionProvider;
+import com.tropyx.nb_puppet.indexer.InheritanceGraph;
 import com.tropyx.nb_puppet.indexer.PPIndexer;
 import com.tropyx.nb_puppet.indexer.PPIndexerFactory;
+import com.tropyx.nb_puppet.indexer.RubyLibIndexer;
+import com.tropyx.nb_puppet.indexer.RubyLibIndexerFactory;
 import com.tropyx.nb_puppet.parser.PClass;
+import com.tropyx.nb_puppet.parser.PDefine;
 import com.tropyx.nb_puppet.parser.PElement;
 import com.tropyx.nb_puppet.parser.PFunction;
 import com.tropyx.nb_puppet.parser.PIdentifier;
+import com.tropyx.nb_puppet.parser.PNode;
 import com.tropyx.nb_puppet.parser.PVariable;
 import com.tropyx.nb_puppet.parser.PVariableDefinition;
 import com.tropyx.nb_puppet.parser.PuppetParserResult;
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
-import javax.swing.text.Position;
-import org.netbeans.editor.BaseDocument;
-import org.netbeans.editor.Utilities;
+import javax.swing.text.Document;
+import org.netbeans.api.queries.FileEncodingQuery;
 import org.netbeans.modules.parsing.api.ParserManager;
 import org.netbeans.modules.parsing.api.ResultIterator;
 import org.netbeans.modules.parsing.api.Source;
@@ -32,16 +49,21 @@ import org.netbeans.modules.refactoring.api.WhereUsedQuery;
 import org.netbeans.modules.refactoring.spi.RefactoringElementsBag;
 import org.netbeans.modules.refactoring.spi.RefactoringPlugin;
 import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
 import org.openide.loaders.DataObject;
 import org.openide.loaders.DataObjectNotFoundException;
 import org.openide.text.CloneableEditorSupport;
-import org.openide.text.PositionBounds;
-import org.openide.text.PositionRef;
 import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
 
 public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
     private final WhereUsedQuery refactoring;
-    private boolean cancelled = false;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    /**
+     * parses candidate files, throughput bounded by the number of processors
+     */
+    private static final RequestProcessor RP = new RequestProcessor(PPWhereUsedQueryPlugin.class.getName(), Runtime.getRuntime().availableProcessors(), true);
+    private static final Logger LOG = Logger.getLogger(PPWhereUsedQueryPlugin.class.getName());
 
     public PPWhereUsedQueryPlugin(WhereUsedQuery refactoring) {
         this.refactoring = refactoring;
@@ -68,7 +90,7 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
         return null;
     }
 
-    private static String getVariableName(PPElementContext context) {
+    static String getVariableName(PPElementContext context) {
         final PElement caretNode = context.getCaretNode();
         if (caretNode.getType() == PElement.VARIABLE) {
             return  ((PVariable)caretNode).getName();
@@ -86,7 +108,7 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
         return null;
     }
 
-    private static String getClassRefName(PPElementContext context) {
+    static String getClassRefName(PPElementContext context) {
         final PElement caretNode = context.getCaretNode();
         if (caretNode.isType(PElement.IDENTIFIER) &&
                 (caretNode.getParent().isType(PElement.CLASS) || caretNode.getParent().isType(PElement.CLASS_REF) )) {
@@ -98,7 +120,7 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
 
     @Override
     public Problem prepare(final RefactoringElementsBag elements) {
-        if (cancelled) {
+        if (cancelled.get()) {
             return null;
         }
 
@@ -110,29 +132,52 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
             try {
                 QuerySupport qs = PPIndexerFactory.getQuerySupportFor(context.getDocument(), true);
                 List<String> names = new ArrayList<>();
-                Query q = collectVariableCandidateNames(qs, clazzDefineName, var, names);
+                InheritanceGraph graph = PPIndexerFactory.getInheritanceGraphFor(context.getDocument(), true);
+                Query q = collectVariableCandidateNames(qs, graph, clazzDefineName, var, names);
 //                System.out.println("q:" + q.toString());
+                //one document per class/define, search only those that matched
+                final Map<FileObject, Set<String>> scopes = new LinkedHashMap<>();
                 for (IndexResult res : q.execute(PPIndexer.FLD_ROOT)) {
-                    findVariableLocations(elements, res.getFile(), names);
+                    Set<String> roots = scopes.get(res.getFile());
+                    if (roots == null) {
+                        roots = new HashSet<>();
+                        scopes.put(res.getFile(), roots);
+                    }
+                    roots.add(res.getValue(PPIndexer.FLD_ROOT));
                 }
+                final List<String> fNames = names;
+                searchFiles(elements, scopes.keySet(), new FileSearch() {
+                    @Override
+                    public void search(FileObject file, PElement root, LineTable lines, List<PPWhereUsedElement> found) throws BadLocationException {
+                        findVariableLocations(file, root, lines, fNames, scopes.get(file), found);
+                    }
+                });
             } catch (IOException ex) {
                 Exceptions.printStackTrace(ex);
             }
             return null;
         }
-        String func = getFunctionName(context);
+        final String func = getFunctionName(context);
         if (func != null) {
             try {
                 QuerySupport qs = PPIndexerFactory.getQuerySupportFor(context.getDocument(), true);
+                Set<FileObject> files = new LinkedHashSet<>();
                 for (IndexResult res : qs.query(PPIndexer.FLD_FUNCTION, func, QuerySupport.Kind.EXACT, PPIndexer.FLD_ROOT)) {
-                    findFunctionLocations(elements, res.getFile(), func);
+                    files.add(res.getFile());
                 }
+                searchFiles(elements, files, new FileSearch() {
+                    @Override
+                    public void search(FileObject file, PElement root, LineTable lines, List<PPWhereUsedElement> found) throws BadLocationException {
+                        findFunctionLocations(file, root, lines, func, found);
+                    }
+                });
+                findRubyFunctionDefinitions(elements, context, func);
             } catch (IOException ex) {
                 Exceptions.printStackTrace(ex);
             }
             return null;
         }
-        String classRef = getClassRefName(context);
+        final String classRef = getClassRefName(context);
         if (classRef != null) {
             try {
                 QuerySupport qs = PPIndexerFactory.getQuerySupportFor(context.getDocument(), true);
@@ -140,9 +185,16 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
                         qs.getQueryFactory().field(PPIndexer.FLD_CLASSREF, classRef, QuerySupport.Kind.EXACT),
                         qs.getQueryFactory().field(PPIndexer.FLD_CLASS, classRef, QuerySupport.Kind.EXACT)
                 );
+                Set<FileObject> files = new LinkedHashSet<>();
                 for (IndexResult res : q.execute(PPIndexer.FLD_ROOT)) {
-                    findClassRefLocations(elements, res.getFile(), classRef);
+                    files.add(res.getFile());
                 }
+                searchFiles(elements, files, new FileSearch() {
+                    @Override
+                    public void search(FileObject file, PElement root, LineTable lines, List<PPWhereUsedElement> found) throws BadLocationException {
+                        findClassRefLocations(file, root, lines, classRef, found);
+                    }
+                });
             } catch (IOException ex) {
                 Exceptions.printStackTrace(ex);
             }
@@ -164,10 +216,10 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
 
     @Override
     public void cancelRequest() {
-        cancelled = true;
+        cancelled.set(true);
     }
 
-    private String getCurrentName(PPElementContext context) {
+    static String getCurrentName(PPElementContext context) {
         List<PClass> clz = context.getRootNode().getChildrenOfType(PClass.class, false);
         if (clz.isEmpty()) {
             return null;
@@ -175,7 +227,7 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
         return clz.get(0).getName();
     }
 
-    private Query collectVariableCandidateNames(QuerySupport qs, String clazzDefineName, String var, List<String> names) throws IOException {
+    static Query collectVariableCandidateNames(QuerySupport qs, InheritanceGraph graph, String clazzDefineName, String var, List<String> names) throws IOException {
         Query.Factory qf = qs.getQueryFactory();
         if (var.startsWith("::")) {
             names.add(var);
@@ -197,9 +249,8 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
             q.add(qf.field(PPIndexer.FLD_VARREF, "::" + var, QuerySupport.Kind.EXACT)); //what if is global?
             names.add(clazzDefineName + "::" + var);
             q.add(qf.field(PPIndexer.FLD_VARREF, clazzDefineName + "::" + var, QuerySupport.Kind.EXACT));
-            for (IndexResult r : qs.query(PPIndexer.FLD_INHERIT, clazzDefineName, QuerySupport.Kind.EXACT, PPIndexer.FLD_ROOT)) {
-                String c = r.getValue(PPIndexer.FLD_ROOT);
-                if (c != null) {
+            if (clazzDefineName != null) {
+                for (String c : graph.getDescendants(clazzDefineName)) {
                     names.add(c + "::" + var);
                     q.add(qf.field(PPIndexer.FLD_VARREF, c + "::" + var, QuerySupport.Kind.EXACT));
                 }
@@ -216,127 +267,281 @@ public class PPWhereUsedQueryPlugin implements RefactoringPlugin {
                 qf.field(PPIndexer.FLD_VARREF, var0, QuerySupport.Kind.EXACT),
                 qf.field(PPIndexer.FLD_ROOT, clz, QuerySupport.Kind.EXACT)
             ));
-            for (IndexResult r : qs.query(PPIndexer.FLD_ROOT, clz, QuerySupport.Kind.EXACT, PPIndexer.FLD_INHERIT)) {
-                String i = r.getValue(PPIndexer.FLD_INHERIT);
-                if (i != null) {
-                    names.add(i + "::" + var0);
-                    q.add(qf.field(PPIndexer.FLD_VARREF, i + "::" + var0, QuerySupport.Kind.EXACT));
-                    q.add(qf.and(
-                        qf.field(PPIndexer.FLD_VARREF, var0, QuerySupport.Kind.EXACT),
-                        qf.field(PPIndexer.FLD_ROOT, i, QuerySupport.Kind.EXACT)
-                    ));
-                }
+            for (String i : graph.getAncestors(clz)) {
+                names.add(i + "::" + var0);
+                q.add(qf.field(PPIndexer.FLD_VARREF, i + "::" + var0, QuerySupport.Kind.EXACT));
+                q.add(qf.and(
+                    qf.field(PPIndexer.FLD_VARREF, var0, QuerySupport.Kind.EXACT),
+                    qf.field(PPIndexer.FLD_ROOT, i, QuerySupport.Kind.EXACT)
+                ));
             }
             return qf.or(q.toArray(new Query[0]));
         }
     }
 
-    private void findVariableLocations(final RefactoringElementsBag elements, final FileObject file, final List<String> names) {
-        try {
-            Source source = Source.create(file);
-            ParserManager.parse(Collections.singleton(source), new UserTask() {
+    /**
+     * finds occurrences in one parsed candidate file.
+     */
+    private interface FileSearch {
+        void search(FileObject file, PElement root, LineTable lines, List<PPWhereUsedElement> found) throws BadLocationException;
+    }
+
+    /**
+     * visits one parsed candidate file, called concurrently for different files.
+     */
+    interface FileVisitor {
+        void visit(FileObject file, CharSequence text, PElement root) throws BadLocationException;
+    }
+
+    /**
+     * the occurrences of each file are added to the bag as soon as the file is done.
+     */
+    private void searchFiles(final RefactoringElementsBag elements, Collection<FileObject> files, final FileSearch search) {
+        visitFiles(files, cancelled, false, new FileVisitor() {
+            @Override
+            public void visit(FileObject file, CharSequence text, PElement root) throws BadLocationException {
+                List<PPWhereUsedElement> found = new ArrayList<>();
+                search.search(file, root, LineTable.create(text), found);
+                synchronized (elements) {
+                    if (!cancelled.get()) {
+                        for (PPWhereUsedElement element : found) {
+                            elements.add(refactoring, element);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * parses the candidate files concurrently and passes them to the visitor.
+     * Files without editor support are skipped, their occurrences could not be shown.
+     * Returns when all files are visited or the request gets cancelled.
+     * @param rewrite the files get written afterwards, closed files are not mapped into memory then,
+     * on Windows a file cannot be written while a mapping of it is alive
+     */
+    static void visitFiles(Collection<FileObject> files, final AtomicBoolean cancelled, final boolean rewrite, final FileVisitor visitor) {
+        List<RequestProcessor.Task> tasks = new ArrayList<>();
+        for (final FileObject file : files) {
+            if (cancelled.get()) {
+                break;
+            }
+            tasks.add(RP.post(new Runnable() {
                 @Override
-                public void run(ResultIterator resultIterator) throws Exception {
-                    Parser.Result pr = resultIterator.getParserResult();
-                    if (pr instanceof PuppetParserResult) {
-                        PuppetParserResult result = (PuppetParserResult) pr;
-                        if (result.getRootNode() != null) {
-                            for (PVariable var : result.getRootNode().getChildrenOfType(PVariable.class, true)) {
-                                if (names.contains(var.getName().substring(1))) {
-                                    String line = createHightlightTextLine(file, var.getOffset(), var.getName().length());
-                                    elements.add(refactoring, new PPWhereUsedElement(line.trim(), file, boundsForElement(file, var, var.getName())));
-                                }
-                            }
-                            for (PVariableDefinition var : result.getRootNode().getChildrenOfType(PVariableDefinition.class, true)) {
-                                if (names.contains(var.getName().substring(1))) {
-                                    String line = createHightlightTextLine(file, var.getOffset(), var.getName().length());
-                                    elements.add(refactoring, new PPWhereUsedElement(line.trim(), file, boundsForElement(file, var, var.getName())));
-                                }
-                            }
+                public void run() {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                    CloneableEditorSupport ces = getEditorSupport(file);
+                    if (ces == null) {
+                        return;
+                    }
+                    try {
+                        Document open = ces.getDocument();
+                        if (open != null) {
+                            visitOpenFile(file, open, cancelled, visitor);
+                            return;
+                        }
+                        CharSequence text = readText(file, !rewrite);
+                        PElement root = PuppetSourceParser.parse(text, cancelled);
+                        if (root != null && !cancelled.get()) {
+                            visitor.visit(file, text, root);
                         }
+                    } catch (IOException | BadLocationException | ParseException ex) {
+                        LOG.log(Level.FINE, null, ex);
                     }
                 }
-            });
-        } catch (ParseException e) {
+            }));
         }
-    }
-    
-    public static CloneableEditorSupport getEditorSupport(FileObject file) {
-        try {
-            DataObject dob = DataObject.find(file);
-            return dob.getLookup().lookup(CloneableEditorSupport.class);
-        } catch (DataObjectNotFoundException ex) {
-            Exceptions.printStackTrace(ex);
+        for (RequestProcessor.Task task : tasks) {
+            if (cancelled.get()) {
+                task.cancel();
+            } else {
+                task.waitFinished();
+            }
         }
-        return null;
     }
 
-    private void findFunctionLocations(final RefactoringElementsBag elements, final FileObject file, final String func) {
-      try {
-            Source source = Source.create(file);
-            ParserManager.parse(Collections.singleton(source), new UserTask() {
+    /**
+     * the text comes from the snapshot of the same parser result as the tree, so an edit made
+     * meanwhile cannot make the offsets of the tree and the text disagree.
+     */
+    private static void visitOpenFile(final FileObject file, Document document, final AtomicBoolean cancelled, final FileVisitor visitor) throws ParseException {
+        ParserManager.parse(Collections.singleton(Source.create(document)), new UserTask() {
+            @Override
+            public void run(ResultIterator resultIterator) throws Exception {
+                Parser.Result result = resultIterator.getParserResult();
+                if (result instanceof PuppetParserResult && !cancelled.get()) {
+                    visitor.visit(file, result.getSnapshot().getText(), ((PuppetParserResult) result).getRootNode());
+                }
+            }
+        });
+    }
+
+    /**
+     * parses the editor content if the file is open, the file content otherwise, no document is loaded.
+     * Safe to call from multiple threads.
+     * @param cancelled stops the parse when set
+     * @return null when cancelled or the file can't be read
+     */
+    public static PElement parseFile(FileObject fo, AtomicBoolean cancelled) {
+        if (isOpen(fo)) {
+            final PElement[] root = new PElement[1];
+            PCompletionProvider.runWithParserResult(getEditorSupport(fo).getDocument(), new PCompletionProvider.ParseResultRunnable() {
                 @Override
-                public void run(ResultIterator resultIterator) throws Exception {
-                    Parser.Result pr = resultIterator.getParserResult();
-                    if (pr instanceof PuppetParserResult) {
-                        PuppetParserResult result = (PuppetParserResult) pr;
-                        if (result.getRootNode() != null) {
-                            for (PFunction function : result.getRootNode().getChildrenOfType(PFunction.class, true)) {
-                                if (func.equals(function.getName())) {
-                                    String line = createHightlightTextLine(file, function.getOffset(), func.length());
-                                    elements.add(refactoring, new PPWhereUsedElement(line.trim(), file, boundsForElement(file, function, func)));
-                                }
-                            }
-                        }
-                    }
+                public void run(PElement rootNode) {
+                    root[0] = rootNode;
                 }
             });
-        } catch (ParseException e) {
+            return root[0];
+        }
+        try {
+            return PuppetSourceParser.parse(readText(fo), cancelled);
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, null, ex);
+            return null;
         }
     }
 
-    private void findClassRefLocations(final RefactoringElementsBag elements, final FileObject file, final String classRef) {
-      try {
-            Source source = Source.create(file);
-            ParserManager.parse(Collections.singleton(source), new UserTask() {
+    static boolean isOpen(FileObject fo) {
+        CloneableEditorSupport ces = getEditorSupport(fo);
+        return ces != null && ces.getDocument() != null;
+    }
+
+    /**
+     * @return editor content if the file is open, the file content otherwise, no document is loaded
+     */
+    static CharSequence readText(FileObject fo) throws IOException {
+        return readText(fo, true);
+    }
+
+    /**
+     * @param map closed files on disk are mapped into memory rather than read through the filesystem
+     */
+    static CharSequence readText(FileObject fo, boolean map) throws IOException {
+        CloneableEditorSupport ces = getEditorSupport(fo);
+        final Document open = ces != null ? ces.getDocument() : null;
+        if (open != null) {
+            final String[] text = new String[1];
+            open.render(new Runnable() {
                 @Override
-                public void run(ResultIterator resultIterator) throws Exception {
-                    Parser.Result pr = resultIterator.getParserResult();
-                    if (pr instanceof PuppetParserResult) {
-                        PuppetParserResult result = (PuppetParserResult) pr;
-                        if (result.getRootNode() != null) {
-                            for (PIdentifier id : result.getRootNode().getChildrenOfType(PIdentifier.class, true)) {
-                                if (classRef.equals(id.getName()) &&
-                                        (id.getParent().isType(PElement.CLASS) || id.getParent().isType(PElement.CLASS_REF))) {
-                                    String line = createHightlightTextLine(file, id.getOffset(), id.getName().length());
-                                    elements.add(refactoring, new PPWhereUsedElement(line.trim(), file, boundsForElement(file, id, id.getName())));
-                                }
-                            }
-                        }
+                public void run() {
+                    try {
+                        text[0] = open.getText(0, open.getLength());
+                    } catch (BadLocationException ex) {
+                        Exceptions.printStackTrace(ex);
                     }
                 }
             });
-        } catch (ParseException e) {
+            return text[0];
         }
+        Charset encoding = FileEncodingQuery.getEncoding(fo);
+        File file = map ? FileUtil.toFile(fo) : null;
+        return file != null ? PuppetSourceParser.read(file.toPath(), encoding) : PuppetSourceParser.normalizeLineSeparators(fo.asText(encoding.name()));
     }
 
+    /**
+     * @param roots names of the classes and defines to search in, null for the whole file
+     */
+    private void findVariableLocations(FileObject file, PElement root, LineTable lines, List<String> names, Set<String> roots, List<PPWhereUsedElement> found) throws BadLocationException {
+        for (PElement scope : getScopes(root, roots)) {
+            for (PVariable var : root.getIndex().getElementsOfType(PVariable.class, scope)) {
+                if (cancelled.get()) {
+                    return;
+                }
+                if (names.contains(var.getName().substring(1))) {
+                    String line = lines.createHighlightedLine(var.getOffset(), var.getName().length());
+                    found.add(new PPWhereUsedElement(line.trim(), file, var.getOffset(), var.getName().length()));
+                }
+            }
+            for (PVariableDefinition var : root.getIndex().getElementsOfType(PVariableDefinition.class, scope)) {
+                if (cancelled.get()) {
+                    return;
+                }
+                if (names.contains(var.getName().substring(1))) {
+                    String line = lines.createHighlightedLine(var.getOffset(), var.getName().length());
+                    found.add(new PPWhereUsedElement(line.trim(), file, var.getOffset(), var.getName().length()));
+                }
+            }
+        }
+    }
+    
+    static List<PElement> getScopes(PElement root, Set<String> roots) {
+        if (roots.contains(null)) {
+            return Collections.singletonList(root);
+        }
+        List<PElement> scopes = new ArrayList<>();
+        for (PElement ch : root.getChildren()) {
+            String name = null;
+            if (ch.getType() == PElement.CLASS) {
+                name = ((PClass) ch).getName();
+            } else if (ch.getType() == PElement.DEFINE) {
+                name = ((PDefine) ch).getName();
+            } else if (ch.getType() == PElement.NODE) {
+                //as indexed in FLD_ROOT
+                List<String> names = PPIndexer.getNodeNames((PNode) ch);
+                name = names.isEmpty() ? null : names.get(0);
+            }
+            if (name != null && roots.contains(name)) {
+                scopes.add(ch);
+            }
+        }
+        return scopes;
+    }
 
-    public String createHightlightTextLine(FileObject file, int offset, int length) throws IOException, BadLocationException {
-        CloneableEditorSupport es = getEditorSupport(file);
-        int rowStart = Utilities.getRowStart((BaseDocument)es.openDocument(), offset);
-        int rowEnd = Utilities.getRowEnd((BaseDocument)es.getDocument(), offset);
-        String line = es.getDocument().getText(rowStart, offset - rowStart) +
-                "<b>" + es.getDocument().getText(offset,  length) +
-                "</b>" + es.getDocument().getText(offset + length, rowEnd - (offset + length));
-        return line;
+    public static CloneableEditorSupport getEditorSupport(FileObject file) {
+        try {
+            DataObject dob = DataObject.find(file);
+            return dob.getLookup().lookup(CloneableEditorSupport.class);
+        } catch (DataObjectNotFoundException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        return null;
+    }
+
+    private void findFunctionLocations(FileObject file, PElement root, LineTable lines, String func, List<PPWhereUsedElement> found) throws BadLocationException {
+        for (PFunction function : root.getIndex().getElementsOfType(PFunction.class)) {
+            if (cancelled.get()) {
+                return;
+            }
+            if (func.equals(function.getName())) {
+                String line = lines.createHighlightedLine(function.getOffset(), func.length());
+                found.add(new PPWhereUsedElement(line.trim(), file, function.getOffset(), func.length()));
+            }
+        }
+    }
+
+    /**
+     * declarations of custom functions in module lib folders, taken from the index without parsing ruby.
+     */
+    private void findRubyFunctionDefinitions(RefactoringElementsBag elements, PPElementContext context, String func) throws IOException {
+        QuerySupport qs = RubyLibIndexerFactory.getQuerySupportFor(context.getDocument(), true);
+        for (IndexResult res : qs.query(RubyLibIndexer.FLD_FUNCTION, func, QuerySupport.Kind.EXACT, RubyLibIndexer.FLD_FUNCTION_OFFSET)) {
+            FileObject file = res.getFile();
+            int offset = PPIndexer.getOffset(res, RubyLibIndexer.FLD_FUNCTION_OFFSET, func);
+            if (file == null || offset < 0 || getEditorSupport(file) == null) {
+                continue;
+            }
+            try {
+                String line = LineTable.create(readText(file)).createHighlightedLine(offset, func.length());
+                elements.add(refactoring, new PPWhereUsedElement(line.trim(), file, offset, func.length()));
+            } catch (BadLocationException ex) {
+                //index out of date
+            }
+        }
     }
 
-    public PositionBounds boundsForElement(FileObject file, PElement var, String text) {
-        CloneableEditorSupport es = getEditorSupport(file);
-        PositionRef start = es.createPositionRef(var.getOffset(), Position.Bias.Forward);
-        PositionRef end = es.createPositionRef(var.getOffset() + text.length(), Position.Bias.Backward);
-        final PositionBounds positionBounds = new PositionBounds(start, end);
-        return positionBounds;
+    private void findClassRefLocations(FileObject file, PElement root, LineTable lines, String classRef, List<PPWhereUsedElement> found) throws BadLocationException {
+        for (PIdentifier id : root.getIndex().getElementsOfType(PIdentifier.class)) {
+            if (cancelled.get()) {
+                return;
+            }
+            if (classRef.equals(id.getName()) &&
+                    (id.getParent().isType(PElement.CLASS) || id.getParent().isType(PElement.CLASS_REF))) {
+                String line = lines.createHighlightedLine(id.getOffset(), id.getName().length());
+                found.add(new PPWhereUsedElement(line.trim(), file, id.getOffset(), id.getName().length()));
+            }
+        }
     }
 
 }
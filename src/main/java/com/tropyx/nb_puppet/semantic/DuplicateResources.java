@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.semantic;
+
+import com.tropyx.nb_puppet.PPConstants;
+import com.tropyx.nb_puppet.indexer.PPIndexer;
+import com.tropyx.nb_puppet.indexer.PPIndexerFactory;
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PResource;
+import com.tropyx.nb_puppet.parser.PuppetParserResult;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import org.netbeans.api.editor.mimelookup.MimeRegistration;
+import org.netbeans.modules.editor.NbEditorUtilities;
+import org.netbeans.modules.parsing.api.Snapshot;
+import org.netbeans.modules.parsing.spi.ParserResultTask;
+import org.netbeans.modules.parsing.spi.Scheduler;
+import org.netbeans.modules.parsing.spi.SchedulerEvent;
+import org.netbeans.modules.parsing.spi.SchedulerTask;
+import org.netbeans.modules.parsing.spi.TaskFactory;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexResult;
+import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport;
+import org.netbeans.spi.editor.hints.ErrorDescription;
+import org.netbeans.spi.editor.hints.ErrorDescriptionFactory;
+import org.netbeans.spi.editor.hints.HintsController;
+import org.netbeans.spi.editor.hints.Severity;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Marks resources declared twice with the same type and title within one class, define or node,
+ * which would fail the catalog compilation. Declarations in other scopes or files only conflict
+ * when both end up in the same catalog, those are just hinted at.
+ * Declarations inside if/unless/case are left alone, they might be exclusive.
+ */
+public class DuplicateResources extends ParserResultTask<PuppetParserResult> {
+    private static final String LAYER_ERRORS = "puppet-duplicate-resources";
+    private static final Logger LOG = Logger.getLogger(DuplicateResources.class.getName());
+
+    private volatile boolean cancelled;
+
+    @Override
+    public int getPriority() {
+        return 200;
+    }
+
+    @Override
+    public Class<? extends Scheduler> getSchedulerClass() {
+        return Scheduler.EDITOR_SENSITIVE_TASK_SCHEDULER;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run(PuppetParserResult result, SchedulerEvent event) {
+        cancelled = false;
+        Document doc = result.getSnapshot().getSource().getDocument(false);
+        if (doc == null || result.getRootNode() == null) {
+            return;
+        }
+        Map<String, List<PResource>> declared = collectDeclarations(result.getRootNode());
+        List<ErrorDescription> errors = new ArrayList<>();
+        try {
+            for (Map.Entry<PResource, String> e : findDuplicates(declared).entrySet()) {
+                errors.add(error(doc, Severity.ERROR, e.getKey(), "Duplicate declaration: " + e.getValue() + " is already declared in this scope"));
+            }
+            if (!declared.isEmpty()) {
+                Map<String, String> elsewhere = findElsewhere(doc, declared.keySet());
+                if (cancelled) {
+                    return;
+                }
+                for (Map.Entry<String, String> e : elsewhere.entrySet()) {
+                    errors.add(error(doc, Severity.HINT, declared.get(e.getKey()).get(0), e.getKey() + " is also declared in " + e.getValue() + ", they conflict if both are in one catalog"));
+                }
+            }
+        } catch (BadLocationException ex) {
+            //document changed in the meantime, next run will fix it
+            return;
+        }
+        HintsController.setErrors(doc, LAYER_ERRORS, errors);
+    }
+
+    /**
+     * one index query for all keys of the file.
+     * @return key to relative path of another file of the project declaring it
+     */
+    private Map<String, String> findElsewhere(Document doc, Collection<String> keys) {
+        Map<String, String> elsewhere = new LinkedHashMap<>();
+        FileObject current = NbEditorUtilities.getFileObject(doc);
+        try {
+            QuerySupport qs = PPIndexerFactory.getQuerySupportFor(doc, false);
+            QuerySupport.Query.Factory qf = qs.getQueryFactory();
+            List<QuerySupport.Query> queries = new ArrayList<>();
+            for (String key : keys) {
+                queries.add(qf.field(PPIndexer.FLD_RESOURCE_DECL, key, QuerySupport.Kind.EXACT));
+            }
+            for (IndexResult r : qf.or(queries.toArray(new QuerySupport.Query[0])).execute(PPIndexer.FLD_RESOURCE_DECL)) {
+                if (cancelled) {
+                    break;
+                }
+                FileObject file = r.getFile();
+                //the index of this file may be outdated, it was checked above
+                if (file == null || file.equals(current)) {
+                    continue;
+                }
+                for (String key : r.getValues(PPIndexer.FLD_RESOURCE_DECL)) {
+                    if (keys.contains(key) && !elsewhere.containsKey(key)) {
+                        elsewhere.put(key, r.getRelativePath());
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, null, ex);
+        }
+        return elsewhere;
+    }
+
+    /**
+     * @return resources outside of if/unless/case by their {@code type[title]} keys
+     */
+    static Map<String, List<PResource>> collectDeclarations(PElement root) {
+        Map<String, List<PResource>> declared = new LinkedHashMap<>();
+        for (PResource resource : root.getChildrenOfType(PResource.class, true)) {
+            if (resource.isInsideConditional()) {
+                continue;
+            }
+            for (String key : PPIndexer.getResourceKeys(resource)) {
+                List<PResource> list = declared.get(key);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    declared.put(key, list);
+                }
+                list.add(resource);
+            }
+        }
+        return declared;
+    }
+
+    /**
+     * @param declared resources by their {@code type[title]} keys
+     * @return the second and later declarations of a key within the same class, define or node, with the key
+     */
+    static Map<PResource, String> findDuplicates(Map<String, List<PResource>> declared) {
+        Map<PResource, String> duplicates = new LinkedHashMap<>();
+        for (Map.Entry<String, List<PResource>> e : declared.entrySet()) {
+            Set<PElement> scopes = new HashSet<>();
+            for (PResource resource : e.getValue()) {
+                if (!scopes.add(getScope(resource))) {
+                    duplicates.put(resource, e.getKey());
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return enclosing class, define or node, the root for top level resources
+     */
+    private static PElement getScope(PElement element) {
+        PElement parent = element.getParent();
+        while (parent.getParent() != null && !parent.isType(PElement.CLASS) && !parent.isType(PElement.DEFINE) && !parent.isType(PElement.NODE)) {
+            parent = parent.getParent();
+        }
+        return parent;
+    }
+
+    private static ErrorDescription error(Document doc, Severity severity, PResource resource, String message) throws BadLocationException {
+        int start = resource.getOffset();
+        int end = Math.min(start + resource.getResourceType().length(), doc.getLength());
+        return ErrorDescriptionFactory.createErrorDescription(severity, message, doc,
+                doc.createPosition(start), doc.createPosition(end));
+    }
+
+    @MimeRegistration(mimeType = PPConstants.MIME_TYPE, service = TaskFactory.class)
+    public static class Factory extends TaskFactory {
+
+        @Override
+        public Collection<? extends SchedulerTask> create(Snapshot snapshot) {
+            return Collections.singleton(new DuplicateResources());
+        }
+    }
+}
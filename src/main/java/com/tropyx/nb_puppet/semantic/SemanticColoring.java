@@ -18,6 +18,7 @@ package com.tropyx.nb_puppet.semantic;
 
 import com.tropyx.nb_puppet.PPConstants;
 import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PElementIndex;
 import com.tropyx.nb_puppet.parser.PFunction;
 import com.tropyx.nb_puppet.parser.PResource;
 import com.tropyx.nb_puppet.parser.PResourceAttribute;
@@ -82,6 +83,7 @@ public class SemanticColoring extends ParserResultTask<PuppetParserResult> {
             return;
         }
         final PElement root = result.getRootNode();
+        final PElementIndex index = result.getIndex();
         final OffsetsBag rootBag = getSemanticHighlightsBag(doc);
         final FontColorSettings fcs = MimeLookup.getLookup(MimePath.get(PPConstants.MIME_TYPE)).lookup(FontColorSettings.class);
         if (root != null) {
@@ -90,25 +92,25 @@ public class SemanticColoring extends ParserResultTask<PuppetParserResult> {
                 public void run() {
                     OffsetsBag bag = new OffsetsBag(doc);
                     AttributeSet functionAttrs = fcs.getTokenFontColors(COLOR_METHODDECLARATION);
-                    for (PFunction function : root.getChildrenOfType(PFunction.class, true)) {
+                    for (PFunction function : index.getElementsOfType(PFunction.class)) {
                         bag.addHighlight(function.getOffset(), function.getOffset() + function.getName().length(), functionAttrs);
                     }
                     AttributeSet resAttrs = fcs.getTokenFontColors(COLOR_RESOURCENAME);
-                    for (PResource res : root.getChildrenOfType(PResource.class, true)) {
+                    for (PResource res : index.getElementsOfType(PResource.class)) {
                         bag.addHighlight(res.getOffset(), res.getOffset() + res.getResourceType().length(), resAttrs);
                     }
                     AttributeSet resAttrAttrs = fcs.getTokenFontColors(COLOR_RESOURCEPARAMETER);
                     AttributeSet metaresAttrAttrs = fcs.getTokenFontColors("resource-metaparameter");
-                    for (PResourceAttribute attr : root.getChildrenOfType(PResourceAttribute.class, true)) {
+                    for (PResourceAttribute attr : index.getElementsOfType(PResourceAttribute.class)) {
                         bag.addHighlight(attr.getOffset(), attr.getOffset() + attr.getName().length(), metaparameters.contains(attr.getName()) ? metaresAttrAttrs : resAttrAttrs);
                     }
                     Set<String> varNames = new HashSet<>();
                     AttributeSet localVarsAttrs = fcs.getTokenFontColors(COLOR_LOCAL_VARIABLE);
-                    for (PVariableDefinition v : root.getChildrenOfType(PVariableDefinition.class, true)) {
+                    for (PVariableDefinition v : index.getElementsOfType(PVariableDefinition.class)) {
                         varNames.add(v.getName());
                         bag.addHighlight(v.getOffset(), v.getOffset() + v.getName().length(), localVarsAttrs);
                     }
-                    for (PVariable v : root.getChildrenOfType(PVariable.class, true)) {
+                    for (PVariable v : index.getElementsOfType(PVariable.class)) {
                         if (varNames.contains(v.getName())) {
                             bag.addHighlight(v.getOffset(), v.getOffset() + v.getName().length(), localVarsAttrs);
                         }
@@ -16,17 +16,39 @@
  */
 package com.tropyx.nb_puppet.hyperlink;
 
+import com.tropyx.nb_puppet.indexer.PPIndexer;
+import com.tropyx.nb_puppet.refactoring.PPWhereUsedQueryPlugin;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
 import org.junit.Test;
-import static org.junit.Assert.*;
+import org.netbeans.editor.BaseDocument;
+import org.netbeans.junit.NbTestCase;
+import org.netbeans.modules.parsing.lucene.support.IndexDocument;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexResult;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.text.CloneableEditorSupport;
 import org.openide.util.Pair;
 
 /**
  *
  * @author mkleint
  */
-public class PHyperlinkProviderTest {
+public class PHyperlinkProviderTest extends NbTestCase {
     
-    public PHyperlinkProviderTest() {
+    public PHyperlinkProviderTest(String name) {
+        super(name);
     }
 
 
@@ -46,5 +68,219 @@ public class PHyperlinkProviderTest {
         assertEquals("$var", tup.second());
     }
 
-    
+    @Test
+    public void testGetClassName() {
+        PHyperlinkProvider inst = new PHyperlinkProvider();
+        assertEquals("mod::params", inst.getClassName("$mod::params::var"));
+        assertEquals("mod", inst.getClassName("${mod::var}"));
+        assertNull(inst.getClassName("$var"));
+        assertNull(inst.getClassName("$::var"));
+    }
+
+    @Test
+    public void testTupleCacheHit() throws Exception {
+        Document doc = new PlainDocument();
+        doc.insertString(0, "  $foo = 1", null);
+        PHyperlinkProvider.TupleCache cache = PHyperlinkProvider.TupleCache.get(doc);
+        assertSame(cache, PHyperlinkProvider.TupleCache.get(doc));
+        PHyperlinkProvider.Tuple tup = new PHyperlinkProvider.Tuple("$foo", 0, 2);
+        cache.put(cache.getVersion(), 3, tup);
+        //any offset within the token finds it, its end offset does not
+        assertSame(tup, cache.find(2));
+        assertSame(tup, cache.find(5));
+        assertNull(cache.find(6));
+        assertNull(cache.find(1));
+    }
+
+    @Test
+    public void testTupleCacheMiss() throws Exception {
+        Document doc = new PlainDocument();
+        doc.insertString(0, "  $foo = 1", null);
+        PHyperlinkProvider.TupleCache cache = PHyperlinkProvider.TupleCache.get(doc);
+        cache.put(cache.getVersion(), 7, PHyperlinkProvider.TupleCache.NONE);
+        assertSame(PHyperlinkProvider.TupleCache.NONE, cache.find(7));
+        assertNull(cache.find(8));
+    }
+
+    @Test
+    public void testTupleCacheClearedOnEdit() throws Exception {
+        Document doc = new PlainDocument();
+        doc.insertString(0, "  $foo = 1", null);
+        PHyperlinkProvider.TupleCache cache = PHyperlinkProvider.TupleCache.get(doc);
+        cache.put(cache.getVersion(), 2, new PHyperlinkProvider.Tuple("$foo", 0, 2));
+        cache.put(cache.getVersion(), 7, PHyperlinkProvider.TupleCache.NONE);
+        int version = cache.getVersion();
+        doc.insertString(0, "\n", null);
+        assertTrue(cache.getVersion() != version);
+        assertNull(cache.find(2));
+        assertNull(cache.find(7));
+        cache.put(cache.getVersion(), 3, new PHyperlinkProvider.Tuple("$foo", 0, 3));
+        doc.remove(0, 1);
+        assertNull(cache.find(3));
+    }
+
+    @Test
+    public void testTupleCacheDropsStaleResult() throws Exception {
+        Document doc = new PlainDocument();
+        doc.insertString(0, "  $foo = 1", null);
+        PHyperlinkProvider.TupleCache cache = PHyperlinkProvider.TupleCache.get(doc);
+        //resolved against the text before the edit
+        int version = cache.getVersion();
+        doc.insertString(0, "\n", null);
+        cache.put(version, 2, new PHyperlinkProvider.Tuple("$foo", 0, 2));
+        cache.put(version, 7, PHyperlinkProvider.TupleCache.NONE);
+        assertNull(cache.find(2));
+        assertNull(cache.find(7));
+    }
+
+    @Test
+    public void testVariableFromIndexFirst() throws Exception {
+        FileObject root = createModule("a", "class a {\n  $x = 1\n}\n");
+        Navigation nav = new Navigation();
+        //the stored offset wins over the sources, which are not parsed at all
+        nav.index.add(indexResult(root, "manifests/init.pp", "a", "x:42"));
+        assertTrue(nav.showVariableFromIndex(createDocument(), "a", "x"));
+        assertEquals(Collections.singletonList(Pair.of(root.getFileObject("manifests/init.pp"), 42)), nav.shown);
+    }
+
+    @Test
+    public void testVariableFromIndexInheritanceChain() throws Exception {
+        FileObject a = createModule("a", "class a {\n  $x = 1\n  $y = 2\n}\n");
+        FileObject b = createModule("b", "class b inherits a {\n  $y = 3\n}\n");
+        Navigation nav = new Navigation();
+        nav.index.add(indexResult(a, "manifests/init.pp", "a", "x:14", "y:23"));
+        nav.index.add(indexResult(b, "manifests/init.pp", "b", "y:24"));
+        nav.ancestors.put("b", Collections.singletonList("a"));
+        assertTrue(nav.showVariableFromIndex(createDocument(), "b", "x"));
+        //the nearest class in the chain defining the variable
+        assertTrue(nav.showVariableFromIndex(createDocument(), "b", "y"));
+        assertFalse(nav.showVariableFromIndex(createDocument(), "b", "z"));
+        assertEquals(Arrays.asList(
+                Pair.of(a.getFileObject("manifests/init.pp"), 14),
+                Pair.of(b.getFileObject("manifests/init.pp"), 24)), nav.shown);
+    }
+
+    @Test
+    public void testVariableFromSources() throws Exception {
+        String text = "class a {\n  $x = 1\n}\n";
+        FileObject a = createModule("a", text);
+        FileObject b = createModule("b", "class b inherits a {\n}\n");
+        Navigation nav = new Navigation();
+        //indexed before variable offsets were stored, the inheritance is not known either
+        nav.index.add(indexResult(a, "manifests/init.pp", "a"));
+        nav.index.add(indexResult(b, "manifests/init.pp", "b"));
+        Document doc = createDocument();
+        assertFalse(nav.showVariableFromIndex(doc, "b", "x"));
+        assertTrue(nav.showVariableFromSources(doc, "b", "$x"));
+        FileObject declaring = a.getFileObject("manifests/init.pp");
+        assertEquals(Collections.singletonList(Pair.of(declaring, text.indexOf("$x"))), nav.shown);
+        //parsed from disk, no editor document got loaded
+        assertNoDocument(declaring);
+        assertNoDocument(b.getFileObject("manifests/init.pp"));
+    }
+
+    @Test
+    public void testDeclarationsPreferCurrentProject() throws Exception {
+        //two checkouts of the same module, both indexed
+        FileObject one = createModule("one/mod", "class mod {\n}\n");
+        FileObject two = createModule("two/mod", "class mod {\n}\n");
+        FileObject other = createModule("two/other", "class other {\n}\n");
+        Navigation nav = new Navigation();
+        nav.index.add(indexResult(two, "manifests/init.pp", "mod"));
+        nav.index.add(indexResult(one, "manifests/init.pp", "mod"));
+        nav.index.add(indexResult(other, "manifests/init.pp", "other"));
+        FileObject current = FileUtil.createData(one, "manifests/params.pp");
+        Document doc = PPWhereUsedQueryPlugin.getEditorSupport(current).openDocument();
+        Map<String, IndexResult> declarations = nav.findDeclarations(doc, Arrays.asList("mod", "other"));
+        assertEquals(one.getFileObject("manifests/init.pp"), declarations.get("mod").getFile());
+        //not in the current project at all, any checkout will do
+        assertEquals(other.getFileObject("manifests/init.pp"), declarations.get("other").getFile());
+    }
+
+    private static void assertNoDocument(FileObject file) {
+        CloneableEditorSupport ces = PPWhereUsedQueryPlugin.getEditorSupport(file);
+        assertTrue(ces == null || ces.getDocument() == null);
+    }
+
+    private FileObject createModule(String name, String manifest) throws IOException {
+        FileObject dir = FileUtil.createFolder(FileUtil.toFileObject(getWorkDir()), name);
+        FileObject file = FileUtil.createData(dir, "manifests/init.pp");
+        try (OutputStream os = file.getOutputStream()) {
+            os.write(manifest.getBytes("UTF-8"));
+        }
+        return dir;
+    }
+
+    private static Document createDocument() {
+        return new BaseDocument(false, "text/x-puppet-manifest");
+    }
+
+    /**
+     * @param varOffsets values of {@link PPIndexer#FLD_VAR_OFFSET}
+     */
+    private static IndexResult indexResult(FileObject root, final String path, String name, String... varOffsets) throws Exception {
+        final Map<String, String[]> fields = new HashMap<>();
+        fields.put(PPIndexer.FLD_ROOT, new String[] {name});
+        fields.put(PPIndexer.FLD_CLASS, new String[] {name});
+        fields.put(PPIndexer.FLD_VAR_OFFSET, varOffsets);
+        IndexDocument document = new IndexDocument() {
+            @Override
+            public String getPrimaryKey() {
+                return path;
+            }
+
+            @Override
+            public void addPair(String key, String value, boolean searchable, boolean stored) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String getValue(String key) {
+                String[] values = getValues(key);
+                return values.length > 0 ? values[0] : null;
+            }
+
+            @Override
+            public String[] getValues(String key) {
+                String[] values = fields.get(key);
+                return values != null ? values : new String[0];
+            }
+        };
+        //only the indexing infrastructure creates results
+        Constructor<IndexResult> constructor = IndexResult.class.getDeclaredConstructor(IndexDocument.class, URL.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(document, root.toURL());
+    }
+
+    /**
+     * answers index queries from a list and records the jumps instead of opening editors
+     */
+    private static final class Navigation extends PHyperlinkProvider {
+        final List<IndexResult> index = new ArrayList<>();
+        final Map<String, List<String>> ancestors = new HashMap<>();
+        final List<Pair<FileObject, Integer>> shown = new ArrayList<>();
+
+        @Override
+        Collection<? extends IndexResult> queryDeclarations(Document doc, Collection<String> names, String... fields) {
+            List<IndexResult> found = new ArrayList<>();
+            for (IndexResult r : index) {
+                if (names.contains(r.getValue(PPIndexer.FLD_ROOT))) {
+                    found.add(r);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        List<String> getAncestors(Document doc, String className) {
+            List<String> list = ancestors.get(className);
+            return list != null ? list : Collections.<String>emptyList();
+        }
+
+        @Override
+        boolean showInFile(FileObject fo, int offset) {
+            shown.add(Pair.of(fo, offset));
+            return true;
+        }
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class BuiltInTypesTest extends NbTestCase {
+
+    public BuiltInTypesTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<String, BuiltInTypes.Type> parsed = BuiltInTypes.parse(Paths.get("src/main/puppet42"));
+        assertTrue(parsed.containsKey("file"));
+        assertTrue(Arrays.asList(parsed.get("exec").getRequiredParams()).contains("command"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BuiltInTypes.write(parsed.values(), out);
+        TreeMap<String, BuiltInTypes.Type> read = BuiltInTypes.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(parsed.keySet(), read.keySet());
+        for (BuiltInTypes.Type type : parsed.values()) {
+            assertEquals(Arrays.asList(type.getRequiredParams()), Arrays.asList(read.get(type.getName()).getRequiredParams()));
+        }
+        BuiltInTypes types = new BuiltInTypes(read);
+        assertEquals(Arrays.asList("service"), names(types.getTypes("serv")));
+        assertNull(types.getType("fil"));
+    }
+
+    private static List<String> names(Iterable<BuiltInTypes.Type> types) {
+        List<String> names = new ArrayList<>();
+        for (BuiltInTypes.Type type : types) {
+            names.add(type.getName());
+        }
+        return names;
+    }
+}
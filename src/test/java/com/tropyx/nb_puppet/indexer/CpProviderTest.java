@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+import org.netbeans.api.java.classpath.ClassPath;
+import org.netbeans.api.project.Project;
+import org.netbeans.junit.NbTestCase;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.Lookup;
+
+public class CpProviderTest extends NbTestCase {
+
+    public CpProviderTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testRootsFollowCreatedFolders() throws Exception {
+        final FileObject dir = FileUtil.createMemoryFileSystem().getRoot();
+        FileObject manifests = FileUtil.createFolder(dir, "manifests");
+        Project project = new Project() {
+            @Override
+            public FileObject getProjectDirectory() {
+                return dir;
+            }
+
+            @Override
+            public Lookup getLookup() {
+                return Lookup.EMPTY;
+            }
+        };
+        ClassPath cp = new CpProvider(project).findClassPath(manifests, ClassPath.SOURCE);
+        assertEquals(Arrays.asList(manifests), Arrays.asList(cp.getRoots()));
+        FileObject data = dir.createFolder("data");
+        FileObject lib = dir.createFolder("lib");
+        assertEquals(Arrays.asList(manifests, data, lib), Arrays.asList(cp.getRoots()));
+        //a hiera config moves the data elsewhere
+        FileObject hiera = dir.createFolder("hiera");
+        try (OutputStream out = FileUtil.createData(dir, "hiera.yaml").getOutputStream()) {
+            out.write("version: 5\ndefaults:\n  datadir: hiera\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(Arrays.asList(manifests, hiera, lib), Arrays.asList(cp.getRoots()));
+        lib.delete();
+        assertEquals(Arrays.asList(manifests, hiera), Arrays.asList(cp.getRoots()));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+public class HieraIndexerTest extends NbTestCase {
+
+    public HieraIndexerTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testFindKeys() throws Exception {
+        String text = "---\n"
+                + "# comment: no\n"
+                + "profile::base::packages:\n"
+                + "  - vim\n"
+                + "  nested: no\n"
+                + "ntp::servers: ['a', 'b']\n"
+                + "'quoted::key': 1\n"
+                + "url: http://example.com\n"
+                + "ntp::servers: again\n";
+        Map<String, Integer> keys = HieraIndexer.findKeys(new StringReader(text));
+        assertEquals(Arrays.asList("profile::base::packages", "ntp::servers", "quoted::key", "url"), new ArrayList<>(keys.keySet()));
+        for (Map.Entry<String, Integer> key : keys.entrySet()) {
+            assertTrue(key.getKey(), text.startsWith(key.getKey(), key.getValue()));
+        }
+    }
+
+    @Test
+    public void testFindKeysOffsetsIgnoreCarriageReturn() throws Exception {
+        Map<String, Integer> keys = HieraIndexer.findKeys(new StringReader("a: 1\r\nb: 2\r\n"));
+        assertEquals(Integer.valueOf(0), keys.get("a"));
+        assertEquals(Integer.valueOf(5), keys.get("b"));
+        keys = HieraIndexer.findKeys(new StringReader("a: 1\rb: 2\r\rc: 3"));
+        assertEquals(Integer.valueOf(5), keys.get("b"));
+        assertEquals(Integer.valueOf(11), keys.get("c"));
+    }
+
+    @Test
+    public void testDataFoldersOfHiera5Config() throws Exception {
+        FileObject dir = FileUtil.createMemoryFileSystem().getRoot();
+        FileObject data = FileUtil.createFolder(dir, "hiera/common");
+        FileUtil.createFolder(dir, "data");
+        write(dir, "hiera.yaml", "---\nversion: 5\ndefaults:\n  datadir: 'hiera/common'\nhierarchy:\n  - name: \"Common\"\n    path: \"common.yaml\"\n");
+        assertEquals(Collections.singletonList(data), HieraIndexer.findDataFolders(dir, null));
+    }
+
+    @Test
+    public void testDataFoldersOfHiera3Config() throws Exception {
+        FileObject dir = FileUtil.createMemoryFileSystem().getRoot();
+        FileObject data = FileUtil.createFolder(dir, "hieradata");
+        write(dir, "puppet/hiera.yaml", "---\n:backends:\n  - yaml\n:yaml:\n  :datadir: \"/etc/puppetlabs/code/environments/%{::environment}/hieradata\"\n");
+        //no hiera.yaml at the default location, the layout decides
+        assertEquals(Collections.singletonList(data), HieraIndexer.findDataFolders(dir, null));
+        //datadir relative to the configured hiera.yaml, after the environment
+        assertEquals(Collections.emptyList(), HieraIndexer.findDataFolders(dir, "puppet/hiera.yaml"));
+        FileObject nested = FileUtil.createFolder(dir, "puppet/hieradata");
+        assertEquals(Collections.singletonList(nested), HieraIndexer.findDataFolders(dir, "puppet/hiera.yaml"));
+    }
+
+    @Test
+    public void testDataFoldersOfModuleLayout() throws Exception {
+        FileObject dir = FileUtil.createMemoryFileSystem().getRoot();
+        FileUtil.createFolder(dir, "manifests");
+        assertEquals(Collections.emptyList(), HieraIndexer.findDataFolders(dir, null));
+        FileObject data = FileUtil.createFolder(dir, "data");
+        assertEquals(Collections.singletonList(data), HieraIndexer.findDataFolders(dir, null));
+        //hiera 5 module config without datadir
+        FileUtil.createFolder(dir, "hieradata");
+        write(dir, "hiera.yaml", "---\nversion: 5\nhierarchy:\n  - name: common\n    path: common.yaml\n");
+        assertEquals(Collections.singletonList(data), HieraIndexer.findDataFolders(dir, null));
+    }
+
+    private static void write(FileObject dir, String path, String text) throws Exception {
+        FileObject fo = FileUtil.createData(dir, path);
+        try (OutputStream out = fo.getOutputStream()) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testLookupFunctions() throws Exception {
+        assertTrue(HieraIndexer.isLookupFunction("lookup"));
+        assertTrue(HieraIndexer.isLookupFunction("hiera_array"));
+        assertFalse(HieraIndexer.isLookupFunction("template"));
+    }
+}
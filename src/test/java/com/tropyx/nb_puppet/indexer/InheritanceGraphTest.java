@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class InheritanceGraphTest extends NbTestCase {
+
+    public InheritanceGraphTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testClosure() throws Exception {
+        URL root = new URL("file:/modules/");
+        InheritanceGraph graph = new InheritanceGraph();
+        graph.addRoot(root, new HashMap<URL, Map<String, String>>());
+        graph.update(root, new URL("file:/modules/a/init.pp"), edges("a", "a::params"));
+        graph.update(root, new URL("file:/modules/a/params.pp"), edges("a::params", "base::params"));
+        graph.update(root, new URL("file:/modules/b/init.pp"), edges("b", "a"));
+        assertEquals(Arrays.asList("a", "a::params", "base::params"), graph.getAncestors("b"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "a::params")), graph.getDescendants("base::params"));
+        assertEquals(Collections.emptyList(), graph.getAncestors("base::params"));
+
+        //reindexed file drops its inherits
+        graph.update(root, new URL("file:/modules/a/params.pp"), Collections.<String, String>emptyMap());
+        assertEquals(Arrays.asList("a", "a::params"), graph.getAncestors("b"));
+        assertEquals(Collections.emptySet(), graph.getDescendants("base::params"));
+
+        graph.remove(root, new URL("file:/modules/a/init.pp"));
+        assertEquals(Arrays.asList("a"), graph.getAncestors("b"));
+        assertEquals(Collections.emptySet(), graph.getDescendants("a::params"));
+    }
+
+    @Test
+    public void testCycle() throws Exception {
+        URL root = new URL("file:/modules/");
+        InheritanceGraph graph = new InheritanceGraph();
+        graph.addRoot(root, new HashMap<URL, Map<String, String>>());
+        graph.update(root, new URL("file:/modules/a.pp"), edges("a", "b"));
+        graph.update(root, new URL("file:/modules/b.pp"), edges("b", "a"));
+        assertEquals(Arrays.asList("b"), graph.getAncestors("a"));
+        assertEquals(Collections.singleton("b"), graph.getDescendants("a"));
+    }
+
+    @Test
+    public void testRootNotLoaded() throws Exception {
+        InheritanceGraph graph = new InheritanceGraph();
+        graph.update(new URL("file:/modules/"), new URL("file:/modules/b.pp"), edges("b", "a"));
+        assertEquals(Collections.emptyList(), graph.getAncestors("b"));
+    }
+
+    @Test
+    public void testUpdateWhileLoading() throws Exception {
+        URL root = new URL("file:/modules/");
+        InheritanceGraph graph = new InheritanceGraph();
+        assertTrue(graph.startLoading(root));
+        //reindexed after the index query ran, must not be lost
+        graph.update(root, new URL("file:/modules/b.pp"), edges("b", "c"));
+        graph.remove(root, new URL("file:/modules/c.pp"));
+        Map<URL, Map<String, String>> files = new HashMap<>();
+        files.put(new URL("file:/modules/b.pp"), edges("b", "a"));
+        files.put(new URL("file:/modules/c.pp"), edges("c", "a"));
+        graph.addRoot(root, files);
+        assertFalse(graph.startLoading(root));
+        assertEquals(Arrays.asList("c"), graph.getAncestors("b"));
+        assertEquals(Collections.emptyList(), graph.getAncestors("c"));
+    }
+
+    @Test
+    public void testForRoots() throws Exception {
+        URL one = new URL("file:/one/");
+        URL two = new URL("file:/two/");
+        InheritanceGraph graph = new InheritanceGraph();
+        graph.addRoot(one, new HashMap<URL, Map<String, String>>());
+        graph.addRoot(two, new HashMap<URL, Map<String, String>>());
+        graph.update(one, new URL("file:/one/b.pp"), edges("b", "a"));
+        graph.update(two, new URL("file:/two/a.pp"), edges("a", "base"));
+        assertEquals(Arrays.asList("a", "base"), graph.getAncestors("b"));
+
+        InheritanceGraph view = graph.forRoots(Arrays.asList(one));
+        assertEquals(Arrays.asList("a"), view.getAncestors("b"));
+        assertEquals(Collections.emptySet(), view.getDescendants("base"));
+        assertSame(view, graph.forRoots(Arrays.asList(one)));
+        assertEquals(Arrays.asList("a", "base"), graph.forRoots(Arrays.asList(one, two)).getAncestors("b"));
+
+        //a snapshot, changes show up in the next one
+        graph.update(one, new URL("file:/one/c.pp"), edges("c", "b"));
+        assertEquals(Collections.singleton("b"), view.getDescendants("a"));
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), graph.forRoots(Arrays.asList(one)).getDescendants("a"));
+    }
+
+    private static Map<String, String> edges(String clazz, String parent) {
+        Map<String, String> edges = new HashMap<>();
+        edges.put(clazz, parent);
+        return edges;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class NodeDefinitionsTest extends NbTestCase {
+
+    public NodeDefinitionsTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        List<String> names = Arrays.asList("default", "/^web\\d+\\./", "db01", "web01.example.com", "/[/");
+        assertEquals("web01.example.com", NodeDefinitions.select(names, "WEB01.example.com"));
+        assertEquals("/^web\\d+\\./", NodeDefinitions.select(names, "web02.example.com"));
+        //the last domain segment is dropped only after the regexes didn't match
+        assertEquals("db01", NodeDefinitions.select(names, "db01.example.com"));
+        assertEquals("/^web\\d+/", NodeDefinitions.select(Arrays.asList("web01", "/^web\\d+/"), "web01.example.com"));
+        assertEquals("web01", NodeDefinitions.select(Arrays.asList("web01", "/^web\\d+/"), "web01"));
+        assertEquals("/^db\\d+$/", NodeDefinitions.select(Arrays.asList("default", "/^db\\d+$/"), "db01.example.com"));
+        assertEquals("default", NodeDefinitions.select(names, "mail.example.com"));
+        assertNull(NodeDefinitions.select(Arrays.asList("db01"), "mail.example.com"));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class PPIndexerTest extends NbTestCase {
+
+    public PPIndexerTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testBuildDocument() throws Exception {
+        Map<String, List<String>> fields = buildDocument(
+                "class aaa::bbb ( $param = 'x', $req ) inherits aaa::params {\n"
+              + "  $a = $b\n"
+              + "  $a = $c\n"
+              + "  notice($a)\n"
+              + "  include ccc\n"
+              + "  include ccc\n"
+              + "  file { '/tmp/x': ensure => $b }\n"
+              + "  file { '/tmp/y': }\n"
+              + "}\n");
+        assertEquals(Arrays.asList("aaa::bbb"), fields.get(PPIndexer.FLD_ROOT));
+        assertEquals(Arrays.asList("aaa::bbb"), fields.get(PPIndexer.FLD_CLASS));
+        assertEquals(Arrays.asList("aaa::params"), fields.get(PPIndexer.FLD_INHERIT));
+        assertEquals(Arrays.asList("param", "req"), fields.get(PPIndexer.FLD_PARAM));
+        assertEquals(Arrays.asList("req"), fields.get(PPIndexer.FLD_REQ_PARAM));
+        //parameters are variable definitions too
+        assertSameValues(fields.get(PPIndexer.FLD_VAR), "param", "req", "a");
+        assertSameValues(fields.get(PPIndexer.FLD_VARREF), "param", "req", "a", "b", "c");
+        assertSameValues(fields.get(PPIndexer.FLD_CLASSREF), "aaa::params", "ccc");
+        assertEquals(Arrays.asList("file"), fields.get(PPIndexer.FLD_RESOURCE));
+        assertSameValues(fields.get(PPIndexer.FLD_FUNCTION), "notice", "include");
+    }
+
+    @Test
+    public void testDeclarationOffsets() throws Exception {
+        String text = "# header\n"
+                    + "class aaa {\n"
+                    + "  $a = 1\n"
+                    + "  $a = 2\n"
+                    + "}\n"
+                    + "define bbb::ccc {\n"
+                    + "  $b = 3\n"
+                    + "}\n";
+        Map<String, List<String>> fields = buildDocument(text);
+        assertSameValues(fields.get(PPIndexer.FLD_ROOT_OFFSET),
+                "aaa:" + text.indexOf("aaa"), "bbb::ccc:" + text.indexOf("bbb::ccc"));
+        assertSameValues(fields.get(PPIndexer.FLD_VAR_OFFSET),
+                "a:" + text.indexOf("$a"), "b:" + text.indexOf("$b"));
+    }
+
+    @Test
+    public void testDocumentPerClass() throws Exception {
+        List<Map<String, List<String>>> documents = buildDocuments(
+                "class aaa {\n"
+              + "  $a = $global\n"
+              + "}\n"
+              + "define bbb {\n"
+              + "  include ccc\n"
+              + "}\n"
+              + "node 'xxx' {\n"
+              + "  include ddd\n"
+              + "}\n");
+        assertEquals(3, documents.size());
+        Map<String, List<String>> aaa = documents.get(0);
+        assertEquals(Arrays.asList("aaa"), aaa.get(PPIndexer.FLD_ROOT));
+        assertEquals(Arrays.asList("a"), aaa.get(PPIndexer.FLD_VAR));
+        assertSameValues(aaa.get(PPIndexer.FLD_VARREF), "a", "global");
+        assertNull(aaa.get(PPIndexer.FLD_CLASSREF));
+        Map<String, List<String>> bbb = documents.get(1);
+        assertEquals(Arrays.asList("bbb"), bbb.get(PPIndexer.FLD_ROOT));
+        assertEquals(Arrays.asList("ccc"), bbb.get(PPIndexer.FLD_CLASSREF));
+        assertNull(bbb.get(PPIndexer.FLD_VAR));
+        Map<String, List<String>> node = documents.get(2);
+        assertEquals(Arrays.asList("xxx"), node.get(PPIndexer.FLD_ROOT));
+        assertEquals(Arrays.asList("ddd"), node.get(PPIndexer.FLD_CLASSREF));
+    }
+
+    @Test
+    public void testResourceDeclarations() throws Exception {
+        String text = "class aaa {\n"
+                    + "  file { '/etc/ntp.conf': ensure => file }\n"
+                    + "  package { ['ntp', \"ntpdate\"]: }\n"
+                    + "  class { 'bbb': }\n"
+                    + "  file { \"/etc/${x}\": }\n"
+                    + "  File { mode => '0644' }\n"
+                    + "  if $x {\n"
+                    + "    service { 'ntp': }\n"
+                    + "  }\n"
+                    + "}\n";
+        Map<String, List<String>> fields = buildDocument(text);
+        assertSameValues(fields.get(PPIndexer.FLD_RESOURCE_DECL),
+                "file[/etc/ntp.conf]", "package[ntp]", "package[ntpdate]", "class[bbb]");
+        assertTrue(fields.get(PPIndexer.FLD_RESOURCE_DECL_OFFSET).contains(
+                "file[/etc/ntp.conf]:" + text.indexOf("file {")));
+    }
+
+    @Test
+    public void testNodeDocument() throws Exception {
+        List<Map<String, List<String>>> documents = buildDocuments(
+                "node 'db.example.com', /^web\\d+\\./ {\n"
+              + "  include base\n"
+              + "  class { 'apache': }\n"
+              + "  include base\n"
+              + "}\n"
+              + "node default inherits base {\n"
+              + "}\n");
+        assertEquals(2, documents.size());
+        Map<String, List<String>> node = documents.get(0);
+        assertEquals(Arrays.asList("db.example.com", "/^web\\d+\\./"), node.get(PPIndexer.FLD_NODE));
+        assertEquals(Arrays.asList("base", "apache"), node.get(PPIndexer.FLD_NODE_CLASS));
+        assertEquals(Arrays.asList("default"), documents.get(1).get(PPIndexer.FLD_NODE));
+        assertNull(documents.get(1).get(PPIndexer.FLD_NODE_CLASS));
+    }
+
+    /**
+     * all documents of the file merged
+     */
+    static Map<String, List<String>> buildDocument(String text) {
+        Map<String, List<String>> fields = new HashMap<>();
+        for (Map<String, List<String>> document : buildDocuments(text)) {
+            for (Map.Entry<String, List<String>> e : document.entrySet()) {
+                List<String> values = fields.get(e.getKey());
+                if (values == null) {
+                    values = new ArrayList<>();
+                    fields.put(e.getKey(), values);
+                }
+                values.addAll(e.getValue());
+            }
+        }
+        return fields;
+    }
+
+    static List<Map<String, List<String>>> buildDocuments(String text) {
+        final List<Map<String, List<String>>> documents = new ArrayList<>();
+        PPIndexer.buildDocuments(PuppetSourceParser.parse(text), new PPIndexer.DocumentFactory() {
+            @Override
+            public PPIndexer.DocumentSink createDocument() {
+                final Map<String, List<String>> fields = new HashMap<>();
+                documents.add(fields);
+                return new PPIndexer.DocumentSink() {
+                    @Override
+                    public void addPair(String key, String value, boolean searchable, boolean stored) {
+                        List<String> values = fields.get(key);
+                        if (values == null) {
+                            values = new ArrayList<>();
+                            fields.put(key, values);
+                        }
+                        values.add(value);
+                    }
+                };
+            }
+        });
+        return documents;
+    }
+
+    private static void assertSameValues(List<String> actual, String... expected) {
+        assertNotNull(actual);
+        assertEquals(actual.toString(), expected.length, actual.size());
+        assertTrue(actual.toString(), actual.containsAll(Arrays.asList(expected)));
+    }
+}
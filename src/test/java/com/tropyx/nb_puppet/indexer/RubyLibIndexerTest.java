@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.indexer;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class RubyLibIndexerTest extends NbTestCase {
+
+    public RubyLibIndexerTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testScanType() throws Exception {
+        String text = "Puppet::Type.newtype(:my_service) do\n"
+                + "  @doc = 'newtype(:in_string) and \\'newtype(:escaped)\\' are not declarations'\n"
+                + "  # newtype(:commented)\n"
+                + "  ensurable\n"
+                + "  newparam(:name, :namevar => true) do\n"
+                + "  end\n"
+                + "end\n";
+        RubyLibIndexer.Definitions defs = RubyLibIndexer.scan(new StringReader(text));
+        assertEquals(Arrays.asList("my_service"), new ArrayList<>(defs.types.keySet()));
+        assertEquals(text.indexOf("my_service"), defs.types.get("my_service").intValue());
+        assertTrue(defs.functions.isEmpty());
+    }
+
+    @Test
+    public void testScanAfterString() throws Exception {
+        String text = "name = \"quoted # not a comment\"; Puppet::Type.newtype('after_string') do\n"
+                + "end\n";
+        RubyLibIndexer.Definitions defs = RubyLibIndexer.scan(new StringReader(text));
+        assertEquals(Arrays.asList("after_string"), new ArrayList<>(defs.types.keySet()));
+    }
+
+    @Test
+    public void testScanFunctions() throws Exception {
+        String text = "Puppet::Functions.create_function(:'mymod::upcase') do\n"
+                + "end\n"
+                + "module Puppet::Parser::Functions\n"
+                + "  newfunction(:legacy, :type => :rvalue) do |args|\n"
+                + "  end\n"
+                + "end\n";
+        RubyLibIndexer.Definitions defs = RubyLibIndexer.scan(new StringReader(text));
+        assertEquals(Arrays.asList("mymod::upcase", "legacy"), new ArrayList<>(defs.functions.keySet()));
+        assertEquals(text.indexOf("mymod::upcase"), defs.functions.get("mymod::upcase").intValue());
+        assertEquals(text.indexOf("legacy"), defs.functions.get("legacy").intValue());
+    }
+}
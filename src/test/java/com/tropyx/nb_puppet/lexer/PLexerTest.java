@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.lexer;
+
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.netbeans.api.lexer.PartType;
+import org.netbeans.api.lexer.TokenChange;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenHierarchyEvent;
+import org.netbeans.api.lexer.TokenHierarchyListener;
+import org.netbeans.api.lexer.TokenSequence;
+import org.netbeans.editor.BaseDocument;
+import org.netbeans.junit.NbTestCase;
+
+public class PLexerTest extends NbTestCase {
+
+    public PLexerTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testMultiLineStringParts() throws Exception {
+        TokenSequence<PTokenId> ts = PuppetSourceParser.tokenSequence("$a = 'aaa\nbbb\nccc' $b");
+        assertToken(ts, PTokenId.VARIABLE, "$a", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, " ", PartType.COMPLETE);
+        assertToken(ts, PTokenId.EQUALS, "=", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, " ", PartType.COMPLETE);
+        assertToken(ts, PTokenId.STRING_LITERAL, "'aaa\n", PartType.START);
+        assertToken(ts, PTokenId.STRING_LITERAL, "bbb\n", PartType.MIDDLE);
+        assertToken(ts, PTokenId.STRING_LITERAL, "ccc'", PartType.END);
+        assertToken(ts, PTokenId.WHITESPACE, " ", PartType.COMPLETE);
+        assertToken(ts, PTokenId.VARIABLE, "$b", PartType.COMPLETE);
+        assertFalse(ts.moveNext());
+    }
+
+    @Test
+    public void testMultiLineCommentParts() throws Exception {
+        TokenSequence<PTokenId> ts = PuppetSourceParser.tokenSequence("/* aaa {\n } */{");
+        assertToken(ts, PTokenId.COMMENT, "/* aaa {\n", PartType.START);
+        assertToken(ts, PTokenId.COMMENT, " } */", PartType.END);
+        assertToken(ts, PTokenId.LBRACE, "{", PartType.COMPLETE);
+        assertFalse(ts.moveNext());
+    }
+
+    @Test
+    public void testHeredoc() throws Exception {
+        TokenSequence<PTokenId> ts = PuppetSourceParser.tokenSequence(
+                "$a = @(\"END\":json/tn) # comment\n"
+              + "{ \"a\": \"${b}\" }\n"
+              + "  aaa } END\n"
+              + "  |- END\n"
+              + "$c");
+        assertToken(ts, PTokenId.VARIABLE, "$a", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, " ", PartType.COMPLETE);
+        assertToken(ts, PTokenId.EQUALS, "=", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, " ", PartType.COMPLETE);
+        assertToken(ts, PTokenId.HEREDOC, "@(\"END\":json/tn)", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, " ", PartType.COMPLETE);
+        assertToken(ts, PTokenId.LINE_COMMENT, "# comment\n", PartType.COMPLETE);
+        assertToken(ts, PTokenId.HEREDOC, "{ \"a\": \"${b}\" }\n  aaa } END\n  |- END", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, "\n", PartType.COMPLETE);
+        assertToken(ts, PTokenId.VARIABLE, "$c", PartType.COMPLETE);
+        assertFalse(ts.moveNext());
+    }
+
+    @Test
+    public void testHeredocBodyOnNextLine() throws Exception {
+        TokenSequence<PTokenId> ts = PuppetSourceParser.tokenSequence(
+                "notice(@(EOT))\n"
+              + "class { 'x': }\n"
+              + "EOT\n"
+              + "@@file");
+        assertToken(ts, PTokenId.NOTICE, "notice", PartType.COMPLETE);
+        assertToken(ts, PTokenId.LPAREN, "(", PartType.COMPLETE);
+        assertToken(ts, PTokenId.HEREDOC, "@(EOT)", PartType.COMPLETE);
+        assertToken(ts, PTokenId.RPAREN, ")", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, "\n", PartType.COMPLETE);
+        assertToken(ts, PTokenId.HEREDOC, "class { 'x': }\nEOT", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, "\n", PartType.COMPLETE);
+        //not a heredoc
+        assertToken(ts, PTokenId.ERROR, "@", PartType.COMPLETE);
+        assertToken(ts, PTokenId.ERROR, "@", PartType.COMPLETE);
+    }
+
+    @Test
+    public void testKeywords() throws Exception {
+        for (PTokenId id : PTokenId.values()) {
+            String text = id.fixedText();
+            if (text == null || !text.matches("[a-z]+")) {
+                continue;
+            }
+            PTokenId expected = id == PTokenId.OR || id == PTokenId.IN || id == PTokenId.INFO ? PTokenId.IDENTIFIER : id;
+            TokenSequence<PTokenId> ts = PuppetSourceParser.tokenSequence(text + " ");
+            assertToken(ts, expected, text, PartType.COMPLETE);
+            ts = PuppetSourceParser.tokenSequence(text + "x ");
+            assertToken(ts, PTokenId.IDENTIFIER, text + "x", PartType.COMPLETE);
+            ts = PuppetSourceParser.tokenSequence(text.substring(0, text.length() - 1) + " ");
+            assertToken(ts, PTokenId.IDENTIFIER, text.substring(0, text.length() - 1), PartType.COMPLETE);
+        }
+    }
+
+    @Test
+    public void testFunctionOrIdentifier() throws Exception {
+        TokenSequence<PTokenId> ts = PuppetSourceParser.tokenSequence("include foo\ntag { 'x': }\nclasses::a => b");
+        assertToken(ts, PTokenId.INCLUDE, "include", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, " ", PartType.COMPLETE);
+        assertToken(ts, PTokenId.IDENTIFIER, "foo", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, "\n", PartType.COMPLETE);
+        //resource type named like a function
+        assertToken(ts, PTokenId.IDENTIFIER, "tag", PartType.COMPLETE);
+        assertToken(ts, PTokenId.WHITESPACE, " ", PartType.COMPLETE);
+        assertToken(ts, PTokenId.LBRACE, "{", PartType.COMPLETE);
+        while (ts.token().id() != PTokenId.RBRACE) {
+            assertTrue(ts.moveNext());
+        }
+        assertToken(ts, PTokenId.WHITESPACE, "\n", PartType.COMPLETE);
+        assertToken(ts, PTokenId.IDENTIFIER, "classes::a", PartType.COMPLETE);
+    }
+
+    @Test
+    public void testRelexInsideCommentIsLocal() throws Exception {
+        StringBuilder sb = new StringBuilder("class aaa {\n/*\n");
+        for (int i = 0; i < 200; i++) {
+            sb.append(" * line ").append(i).append("\n");
+        }
+        sb.append(" */\n}\n");
+        BaseDocument doc = new BaseDocument(false, "text/x-puppet-manifest");
+        doc.insertString(0, sb.toString(), null);
+        TokenHierarchy<?> th = TokenHierarchy.get(doc);
+        th.tokenSequence().tokenCount();
+        final List<TokenChange<?>> changes = new ArrayList<>();
+        th.addTokenHierarchyListener(new TokenHierarchyListener() {
+            @Override
+            public void tokenHierarchyChanged(TokenHierarchyEvent evt) {
+                changes.add(evt.tokenChange());
+            }
+        });
+        doc.insertString(sb.indexOf(" * line 100") + 3, "x", null);
+        assertEquals(1, changes.size());
+        assertTrue("removed:" + changes.get(0).removedTokenCount(), changes.get(0).removedTokenCount() <= 2);
+        assertTrue("added:" + changes.get(0).addedTokenCount(), changes.get(0).addedTokenCount() <= 2);
+    }
+
+    @Test
+    public void testRelexCommentAfterHeredocHeader() throws Exception {
+        String text = "$a = @(END) /* aaa\n bbb */\nbody\nEND\n$b = 1\n";
+        BaseDocument doc = createDocument(text);
+        //restarts inside the comment with a heredoc pending
+        doc.insertString(text.indexOf("bbb"), "x", null);
+        assertSameAsFreshLex(doc);
+    }
+
+    @Test
+    public void testRelexAfterEditsAroundHeredoc() throws Exception {
+        BaseDocument doc = createDocument("@($y = @(\"EOT\":json/tn) # c\nx");
+        doc.remove(9, 2);
+        assertSameAsFreshLex(doc);
+        doc.insertString(15, "/re/\n", null);
+        assertSameAsFreshLex(doc);
+        doc.insertString(9, "END\n", null);
+        assertSameAsFreshLex(doc);
+        doc.remove(20, 3);
+        assertSameAsFreshLex(doc);
+    }
+
+    @Test
+    public void testRelexCommentStartAfterEdit() throws Exception {
+        BaseDocument doc = createDocument("a /*EOT\n/*$x");
+        //the second line was a middle part, now it is the start of a comment of the same length
+        doc.remove(3, 2);
+        assertSameAsFreshLex(doc);
+    }
+
+    private static BaseDocument createDocument(String text) throws Exception {
+        BaseDocument doc = new BaseDocument(false, "text/x-puppet-manifest");
+        doc.insertString(0, text, null);
+        TokenHierarchy.get(doc).tokenSequence().tokenCount();
+        return doc;
+    }
+
+    /**
+     * tokens of the incrementally relexed document match the tokens of its text lexed from scratch
+     */
+    private static void assertSameAsFreshLex(BaseDocument doc) throws Exception {
+        @SuppressWarnings("unchecked")
+        TokenSequence<PTokenId> relexed = (TokenSequence<PTokenId>) TokenHierarchy.get(doc).tokenSequence();
+        BaseDocument freshDoc = new BaseDocument(false, "text/x-puppet-manifest");
+        freshDoc.insertString(0, doc.getText(0, doc.getLength()), null);
+        @SuppressWarnings("unchecked")
+        TokenSequence<PTokenId> fresh = (TokenSequence<PTokenId>) TokenHierarchy.get(freshDoc).tokenSequence();
+        while (fresh.moveNext()) {
+            assertToken(relexed, fresh.token().id(), fresh.token().text().toString(), fresh.token().partType());
+        }
+        assertFalse(relexed.moveNext());
+    }
+
+    private static void assertToken(TokenSequence<PTokenId> ts, PTokenId id, String text, PartType part) {
+        assertTrue(ts.moveNext());
+        assertEquals(id, ts.token().id());
+        assertEquals(text, ts.token().text().toString());
+        assertEquals(part, ts.token().partType());
+    }
+}
@@ -17,7 +17,12 @@
 
 package com.tropyx.nb_puppet.parser;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.text.BadLocationException;
 import org.junit.Test;
 import org.netbeans.editor.BaseDocument;
@@ -27,6 +32,7 @@ import org.netbeans.modules.parsing.api.Snapshot;
 import org.netbeans.modules.parsing.api.Source;
 import org.netbeans.modules.parsing.api.UserTask;
 import org.netbeans.modules.parsing.spi.ParseException;
+import org.netbeans.modules.parsing.spi.SourceModificationEvent;
 
 /**
  *
@@ -275,6 +281,26 @@ public class PuppetParserTest extends NbTestCase {
 //        assertEquals("present", res.getAtributes().get(0).getValue());
     }
 
+    @Test
+    public void testMultiLineStringParse() throws Exception {
+        PuppetParserResult result = doParse(
+                "class aaa::install { "
+             +  " file { \"fff\":"
+              + " content => \"aaa {\n ${bbb}\n}\", "
+             +  " path => \'aaaa\',"
+             + " }"
+             + " }");
+        PClass c = assertAndGetClassElement(result);
+        PResource res = c.getChildrenOfType(PResource.class, true).get(0);
+        assertEquals(2, res.getAtributes().size());
+        assertEquals("content", res.getAtributes().get(0).getName());
+        assertEquals("path", res.getAtributes().get(1).getName());
+        List<PString> strings = res.getAtributes().get(0).getChildrenOfType(PString.class, true);
+        assertEquals(1, strings.size());
+        assertEquals("aaa {\n ${bbb}\n}", strings.get(0).getValue());
+        assertEquals("$bbb", strings.get(0).getChildrenOfType(PVariable.class, false).get(0).getName());
+    }
+
     @Test
     public void testSimpleResourceParse2() throws Exception {
         PuppetParserResult result = doParse(
@@ -732,6 +758,233 @@ public class PuppetParserTest extends NbTestCase {
         assertEquals("reduce", cs.get(3).getName());
     }
 
+    @Test
+    public void testIncrementalReparse() throws Exception {
+        BaseDocument bd = createDocument(
+                "class aaa { $a = 1 }\n"
+              + "class bbb { $b = 2 }\n"
+              + "class ccc { $c = $b }\n");
+        PuppetParser pp = new PuppetParser();
+        PuppetParserResult previous = doParse(pp, bd, false);
+        String oldText = bd.getText(0, bd.getLength());
+        List<PElement> before = previous.getRootNode().getChildren();
+        assertEquals(3, before.size());
+        PElement ccc = before.get(2);
+        int cccOffset = ccc.getOffset();
+
+        String insert = "$x = 5 ";
+        bd.insertString(oldText.indexOf("$b = 2"), insert, null);
+        PuppetParserResult result = doParse(pp, bd, true);
+        List<PElement> after = result.getRootNode().getChildren();
+        assertEquals(3, after.size());
+        assertSame(result.getRootNode(), after.get(2).getParent());
+        assertEquals(cccOffset + insert.length(), after.get(2).getOffset());
+        assertEquals(2, after.get(1).getChildrenOfType(PVariableDefinition.class, true).size());
+        assertTreeEquals(doParse(bd.getText(0, bd.getLength())).getRootNode(), result.getRootNode());
+        //the previous result is left as it was
+        assertSame(previous.getRootNode(), ccc.getParent());
+        assertEquals(cccOffset, ccc.getOffset());
+        assertTreeEquals(doParse(oldText).getRootNode(), previous.getRootNode());
+    }
+
+    @Test
+    public void testIncrementalReparseMergedElements() throws Exception {
+        BaseDocument bd = createDocument(
+                "class aaa { $a = 1 }\n"
+              + "class bbb { $b = 2 }\n"
+              + "class ccc { $c = 3 }\n");
+        PuppetParser pp = new PuppetParser();
+        doParse(pp, bd, false);
+        //removing the closing brace makes bbb swallow ccc
+        int brace = bd.getText(0, bd.getLength()).indexOf("2 }") + 2;
+        bd.remove(brace, 1);
+        PuppetParserResult result = doParse(pp, bd, true);
+        assertEquals(2, result.getRootNode().getChildren().size());
+        assertTreeEquals(doParse(bd.getText(0, bd.getLength())).getRootNode(), result.getRootNode());
+    }
+
+    @Test
+    public void testChildAtOffsetIndex() throws Exception {
+        String text = "class aaa ( $bb = '' ) inherits aaa::params {\n"
+             + "  $ccc = \"${bb}/foo\"\n"
+             + "  file { '/etc/x': ensure => present, content => template('aaa/x.erb') }\n"
+             + "  if $ccc { include bbb } else { notice($bb) }\n"
+             + "  case $ccc { 'a': { $d = 1 } default: { } }\n"
+             + "}\n"
+             + "node 'aaa', /bbb/ { include aaa }\n";
+        PuppetParserResult result = doParse(text);
+        PElement root = result.getRootNode();
+        for (int i = 0; i <= text.length(); i++) {
+            assertSame("offset:" + i, linearChildAtOffset(root, i), root.getChildAtOffset(i));
+        }
+    }
+
+    @Test
+    public void testElementsOfTypeIndex() throws Exception {
+        PuppetParserResult result = doParse("class aaa ( $bb = '' ) inherits aaa::params {\n"
+             + "  $ccc = \"${bb}/foo\"\n"
+             + "  file { '/etc/x': ensure => present, content => template('aaa/x.erb') }\n"
+             + "  if $ccc { include bbb } else { notice($bb) }\n"
+             + "  case $ccc { 'a': { $d = 1 } default: { } }\n"
+             + "}\n"
+             + "define bbb::ccc ( $dd ) { notice($dd) }\n"
+             + "node 'aaa', /bbb/ { include aaa }\n");
+        PElementIndex index = result.getIndex();
+        PElement root = result.getRootNode();
+        Class<?>[] types = new Class<?>[] {PVariable.class, PVariableDefinition.class, PFunction.class,
+                                           PResource.class, PResourceAttribute.class, PClassRef.class, PIdentifier.class};
+        for (Class<?> type : types) {
+            @SuppressWarnings("unchecked")
+            Class<PElement> clazz = (Class<PElement>) type;
+            assertEquals(type.getName(), linearElementsOfType(root, clazz), index.getElementsOfType(clazz));
+            assertEquals(type.getName(), linearElementsOfType(root, clazz), root.getChildrenOfType(clazz, true));
+            for (PElement ch : root.getChildren()) {
+                assertEquals(type.getName(), ch.getChildrenOfType(clazz, true), index.getElementsOfType(clazz, ch));
+                for (PElement ch2 : ch.getChildren()) {
+                    assertEquals(type.getName(), ch2.getChildrenOfType(clazz, true), index.getElementsOfType(clazz, ch2));
+                }
+            }
+        }
+        assertFalse(index.getElementsOfType(PElement.class).contains(root));
+    }
+
+    @Test
+    public void testEndOffsetAfterAddingChild() throws Exception {
+        PElement root = new PElement(PElement.ROOT, null, 0);
+        PElement blob = new PElement(PElement.BLOB, root, 5);
+        assertEquals(5, root.getEndOffset());
+        //blob had no end offset cached, root's must be dropped all the same
+        new PElement(PElement.BLOB, blob, 20);
+        assertEquals(20, root.getEndOffset());
+    }
+
+    @Test
+    public void testCancelLargeFile() throws Exception {
+        int count = 2000;
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("class aaa").append(i).append(" ( $bb = '' ) {\n")
+              .append("  file { '/etc/x").append(i).append("': ensure => present, content => template('aaa/x.erb') }\n")
+              .append("  if $bb { include bbb } elsif $cc { notice($bb) } else { $dd = 1 }\n")
+              .append("  case $bb { 'a': { $d = 1 } default: { } }\n")
+              .append("}\n");
+        }
+        final int half = sb.length() / 2;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        //tokens are lexed lazily as the parser advances, the flag gets set once the lexer reaches the middle
+        CharSequence text = new CharSequence() {
+            @Override
+            public int length() {
+                return sb.length();
+            }
+
+            @Override
+            public char charAt(int index) {
+                if (index >= half) {
+                    cancelled.set(true);
+                }
+                return sb.charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return sb.subSequence(start, end);
+            }
+
+            @Override
+            public String toString() {
+                return sb.toString();
+            }
+        };
+        PuppetParser pp = new PuppetParser(cancelled);
+        PElement root = pp.parseTree(PuppetSourceParser.tokenSequence(text));
+        assertFalse(pp.isFinished());
+        int parsed = root.getChildren().size();
+        assertTrue("parsed " + parsed, parsed > 0 && parsed < count);
+        assertEquals("aaa0", ((PClass) root.getChildren().get(0)).getName());
+    }
+
+    @Test
+    public void testCancelledBeforeStart() throws Exception {
+        PuppetParser pp = new PuppetParser(new AtomicBoolean(true));
+        PElement root = pp.parseTree(PuppetSourceParser.tokenSequence("class aaa { }\nclass bbb { }\n"));
+        assertFalse(pp.isFinished());
+        assertTrue(root.getChildren().isEmpty());
+    }
+
+    @Test
+    public void testCancelledParseHasNoResult() throws Exception {
+        BaseDocument bd = createDocument("class aaa { }\nclass bbb { }\n");
+        PuppetParser pp = new PuppetParser();
+        assertNotNull(doParse(pp, bd, false));
+        bd.insertString(0, "class ccc { }\n", null);
+        //cancelled before the parse got to run
+        pp.cancel();
+        assertNull(doParse(pp, bd, true));
+        assertFalse(pp.isFinished());
+        //the next parse is not cancelled and starts over from the last complete result
+        PuppetParserResult result = doParse(pp, bd, true);
+        assertTrue(pp.isFinished());
+        assertTreeEquals(doParse(bd.getText(0, bd.getLength())).getRootNode(), result.getRootNode());
+    }
+
+    @Test
+    public void testHeadlessParse() throws Exception {
+        String text = "class aaa ( $bb = '' ) inherits aaa::params {\n"
+             + "  $ccc = \"${bb}/foo\"\n"
+             + "  file { '/etc/x': ensure => present, content => template('aaa/x.erb') }\n"
+             + "  if $ccc { include bbb } else { notice($bb) }\n"
+             + "}\n"
+             + "node 'aaa', /bbb/ { include aaa }\n";
+        PElement expected = doParse(text).getRootNode();
+        PElement root = PuppetSourceParser.parse(text);
+        assertTreeEquals(expected, root);
+        assertNotNull(root.getIndex());
+
+        File file = new File(getWorkDir(), "init.pp");
+        Files.write(file.toPath(), text.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8));
+        assertTreeEquals(expected, PuppetSourceParser.parse(file.toPath()));
+    }
+
+    @Test(timeout = 10000)
+    public void testUnterminatedQuoteAfterDefine() throws Exception {
+        //the quote swallows the rest of the file, the define name ends at the end of input
+        PElement root = PuppetSourceParser.parse("define' d($p) {\n  notice($p)\n}\n");
+        List<PDefine> defines = root.getChildrenOfType(PDefine.class, true);
+        assertEquals(1, defines.size());
+        assertNull(defines.get(0).getName());
+    }
+
+    private static List<PElement> linearElementsOfType(PElement el, Class<PElement> clazz) {
+        List<PElement> toRet = new ArrayList<>();
+        for (PElement ch : el.getChildren()) {
+            if (clazz.equals(ch.getClass())) {
+                toRet.add(ch);
+            }
+            toRet.addAll(linearElementsOfType(ch, clazz));
+        }
+        return toRet;
+    }
+
+    private static PElement linearChildAtOffset(PElement el, int offset) {
+        for (PElement child : el.getChildren()) {
+            if (child.getOffset() <= offset && child.getEndOffset() >= offset) {
+                return linearChildAtOffset(child, offset);
+            }
+        }
+        return el;
+    }
+
+    private void assertTreeEquals(PElement expected, PElement actual) {
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.toString(), expected.getOffset(), actual.getOffset());
+        assertEquals(expected.toString(), expected.getEndOffset(), actual.getEndOffset());
+        assertEquals(expected.toString(), expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertTreeEquals(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+
     private PClass assertAndGetClassElement(PuppetParserResult result) {
         PElement nd = result.getRootNode();
         assertNotNull(nd);
@@ -757,18 +1010,25 @@ public class PuppetParserTest extends NbTestCase {
     }
 
     private PuppetParserResult doParse(String string) throws ParseException, BadLocationException {
+        return doParse(new PuppetParser(), createDocument(string), false);
+    }
+
+    private BaseDocument createDocument(String string) throws BadLocationException {
         BaseDocument bd = new BaseDocument(false, "text/x-puppet-manifest");
         bd.insertString(0, string, null);
+        return bd;
+    }
 
-        Snapshot snap = Source.create(bd).createSnapshot();
-        PuppetParser pp = new PuppetParser();
+    private PuppetParserResult doParse(PuppetParser pp, BaseDocument bd, boolean modified) throws ParseException {
+        final Source source = Source.create(bd);
+        Snapshot snap = source.createSnapshot();
         UserTask ut = new UserTask() {
 
             @Override
             public void run(ResultIterator resultIterator) throws Exception {
             }
         };
-        pp.parse(snap, ut, null);
+        pp.parse(snap, ut, modified ? new SourceModificationEvent(source, true) {} : null);
         return (PuppetParserResult) pp.getResult(ut);
     }
 
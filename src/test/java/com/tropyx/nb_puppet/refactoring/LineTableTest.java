@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.refactoring;
+
+import javax.swing.text.BadLocationException;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class LineTableTest extends NbTestCase {
+
+    public LineTableTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        LineTable table = LineTable.create("class a {\n  $x = 1\n\n}");
+        assertEquals(4, table.getLineCount());
+        assertEquals(0, table.getLine(0));
+        assertEquals(0, table.getLine(9));
+        assertEquals(1, table.getLine(10));
+        assertEquals(2, table.getLine(19));
+        assertEquals(3, table.getLine(20));
+        assertEquals(10, table.getLineStart(14));
+        assertEquals(18, table.getLineEnd(14));
+        assertEquals(21, table.getLineEnd(20));
+    }
+
+    @Test
+    public void testHighlightedLine() throws Exception {
+        String text = "class a {\n  $x = $y\n}";
+        LineTable table = LineTable.create(text);
+        assertEquals("  $x = <b>$y</b>", table.createHighlightedLine(text.indexOf("$y"), 2));
+        assertEquals("<b>class</b> a {", table.createHighlightedLine(0, 5));
+    }
+
+    @Test
+    public void testOutOfRange() throws Exception {
+        LineTable table = LineTable.create("a\nb");
+        try {
+            table.createHighlightedLine(5, 1);
+            fail();
+        } catch (BadLocationException ex) {
+            //expected
+        }
+        try {
+            table.createHighlightedLine(0, 3);
+            fail();
+        } catch (BadLocationException ex) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.refactoring;
+
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class PPRenamePluginTest extends NbTestCase {
+
+    public PPRenamePluginTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testRenameVariable() throws Exception {
+        String text = "class foo {\n"
+                + "  $x = 1\n"
+                + "  notify { 'a': message => $x, }\n"
+                + "}\n"
+                + "class bar {\n"
+                + "  $x = 2\n"
+                + "  notify { 'b': message => $x, }\n"
+                + "}\n";
+        PElement root = PuppetSourceParser.parse(text);
+        PPRenamePlugin.Edits edits = new PPRenamePlugin.Edits(text);
+        PPRenamePlugin.renameVariables(root, PPWhereUsedQueryPlugin.getScopes(root, Collections.singleton("foo")),
+                Arrays.asList("x", "foo::x"), "x", "y", edits);
+        assertEquals(text.replaceFirst("\\$x = 1", "\\$y = 1").replaceFirst("=> \\$x", "=> \\$y"),
+                PPRenameTransaction.apply(text, edits.getEdits()));
+    }
+
+    @Test
+    public void testRenameClass() throws Exception {
+        String text = "class foo {\n"
+                + "  $v = 1\n"
+                + "}\n"
+                + "class bar inherits foo {\n"
+                + "  include foo\n"
+                + "  notify { 'n': message => $foo::v, require => Class['foo'], }\n"
+                + "  class { 'foo': }\n"
+                + "}\n";
+        PElement root = PuppetSourceParser.parse(text);
+        PPRenamePlugin.Edits edits = new PPRenamePlugin.Edits(text);
+        PPRenamePlugin.renameClass(root, "foo", "baz", edits);
+        assertEquals(text.replace("foo", "baz"), PPRenameTransaction.apply(text, edits.getEdits()));
+    }
+
+    @Test
+    public void testRenameDefine() throws Exception {
+        String text = "define foo::vhost($port) {\n"
+                + "}\n"
+                + "class bar {\n"
+                + "  foo::vhost { 'a': port => 80, }\n"
+                + "  notify { 'n': require => Foo::Vhost['a'], }\n"
+                + "}\n";
+        PElement root = PuppetSourceParser.parse(text);
+        PPRenamePlugin.Edits edits = new PPRenamePlugin.Edits(text);
+        PPRenamePlugin.renameDefine(root, "foo::vhost", "web::site", edits);
+        assertEquals(text.replace("foo::vhost", "web::site").replace("Foo::Vhost", "Web::Site"),
+                PPRenameTransaction.apply(text, edits.getEdits()));
+    }
+
+    @Test
+    public void testAutoloadPath() throws Exception {
+        assertEquals("foo/manifests/init.pp", PPRenamePlugin.autoloadPath("foo"));
+        assertEquals("foo/manifests/bar/baz.pp", PPRenamePlugin.autoloadPath("foo::bar::baz"));
+    }
+}
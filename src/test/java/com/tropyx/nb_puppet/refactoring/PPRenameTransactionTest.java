@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.refactoring;
+
+import java.awt.Dialog;
+import java.awt.EventQueue;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.netbeans.junit.MockServices;
+import org.netbeans.junit.NbTestCase;
+import org.openide.DialogDescriptor;
+import org.openide.DialogDisplayer;
+import org.openide.NotifyDescriptor;
+import org.openide.filesystems.FileLock;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+public class PPRenameTransactionTest extends NbTestCase {
+
+    public PPRenameTransactionTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        assertEquals("include bar\nclass bar {\n}\n", PPRenameTransaction.apply("include foo\nclass foo {\n}\n", Arrays.asList(
+                new PPRenameTransaction.Edit(8, "foo", "bar", null),
+                new PPRenameTransaction.Edit(18, "foo", "bar", null))));
+    }
+
+    @Test
+    public void testApplyKeepsLineSeparators() throws Exception {
+        //offsets count the line separators as one character, as the parser does
+        assertEquals("include bar\r\nclass bar {\r\n}\r\n", PPRenameTransaction.apply("include foo\r\nclass foo {\r\n}\r\n", Arrays.asList(
+                new PPRenameTransaction.Edit(8, "foo", "bar", null),
+                new PPRenameTransaction.Edit(18, "foo", "bar", null))));
+        assertEquals("$y::x\r$y", PPRenameTransaction.apply("$a::x\r$a", Arrays.asList(
+                new PPRenameTransaction.Edit(1, "a", "y", null),
+                new PPRenameTransaction.Edit(7, "a", "y", null))));
+    }
+
+    @Test
+    public void testApplySkipsChangedText() throws Exception {
+        assertEquals("a old\nb", PPRenameTransaction.apply("a old\nb", Collections.singletonList(
+                new PPRenameTransaction.Edit(3, "old", "new", null))));
+    }
+
+    @Test
+    public void testFailedWriteRevertsRename() throws Exception {
+        MockServices.setServices(RecordingDisplayer.class);
+        FileObject dir = FileUtil.createMemoryFileSystem().getRoot();
+        FileObject first = createFile(dir, "first.pp", "include foo\n");
+        FileObject second = createFile(dir, "second.pp", "class foo {\n}\n");
+        PPRenameTransaction transaction = new PPRenameTransaction();
+        transaction.addEdits(first, Collections.singletonList(new PPRenameTransaction.Edit(8, "foo", "bar", null)));
+        transaction.addEdits(second, Collections.singletonList(new PPRenameTransaction.Edit(6, "foo", "bar", null)));
+        //the second file cannot be opened for writing, the first one is rewritten already
+        FileLock lock = second.lock();
+        try {
+            transaction.commit();
+        } finally {
+            lock.releaseLock();
+        }
+        assertEquals("include foo\n", first.asText("UTF-8"));
+        assertEquals("class foo {\n}\n", second.asText("UTF-8"));
+        assertNotNull(transaction.getProblem());
+        assertTrue(transaction.getProblem().isFatal());
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        assertEquals(Collections.singletonList(transaction.getProblem().getMessage()), RecordingDisplayer.MESSAGES);
+    }
+
+    @Test
+    public void testCapitalize() throws Exception {
+        assertEquals("Foo::Bar", PPRenamePlugin.capitalize("foo::bar"));
+        assertEquals("Foo", PPRenamePlugin.capitalize("foo"));
+    }
+
+    private static FileObject createFile(FileObject dir, String name, String content) throws Exception {
+        FileObject file = dir.createData(name);
+        try (OutputStream os = file.getOutputStream()) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    public static final class RecordingDisplayer extends DialogDisplayer {
+        static final List<Object> MESSAGES = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public Object notify(NotifyDescriptor descriptor) {
+            MESSAGES.add(descriptor.getMessage());
+            return NotifyDescriptor.OK_OPTION;
+        }
+
+        @Override
+        public Dialog createDialog(DialogDescriptor descriptor) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.refactoring;
+
+import com.tropyx.nb_puppet.PPConstants;
+import com.tropyx.nb_puppet.parser.PClass;
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PuppetParserFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.text.StyledDocument;
+import org.junit.Test;
+import org.netbeans.api.editor.mimelookup.MimePath;
+import org.netbeans.junit.MockServices;
+import org.netbeans.junit.NbTestCase;
+import org.netbeans.spi.editor.mimelookup.MimeDataProvider;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.Lookup;
+import org.openide.util.lookup.Lookups;
+
+public class PPWhereUsedQueryPluginTest extends NbTestCase {
+
+    public PPWhereUsedQueryPluginTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MockServices.setServices(PuppetParserRegistration.class);
+    }
+
+    @Test
+    public void testOpenFilesFromEditor() throws Exception {
+        FileObject open = createFile("open.pp", "class aaa {\n}\n");
+        FileObject closed = createFile("closed.pp", "class bbb {\n}\n");
+        StyledDocument doc = PPWhereUsedQueryPlugin.getEditorSupport(open).openDocument();
+        //not saved, only the parser result of the document knows about ccc
+        doc.insertString(0, "class ccc {\n}\n", null);
+        final Map<FileObject, String> texts = Collections.synchronizedMap(new HashMap<FileObject, String>());
+        final Map<FileObject, List<String>> classes = Collections.synchronizedMap(new HashMap<FileObject, List<String>>());
+        PPWhereUsedQueryPlugin.visitFiles(Arrays.asList(open, closed), new AtomicBoolean(), false, new PPWhereUsedQueryPlugin.FileVisitor() {
+            @Override
+            public void visit(FileObject file, CharSequence text, PElement root) {
+                texts.put(file, text.toString());
+                List<String> names = new ArrayList<>();
+                for (PClass c : root.getChildrenOfType(PClass.class, false)) {
+                    names.add(c.getName());
+                }
+                classes.put(file, names);
+            }
+        });
+        assertEquals("class ccc {\n}\nclass aaa {\n}\n", texts.get(open));
+        assertEquals(Arrays.asList("ccc", "aaa"), classes.get(open));
+        assertEquals("class bbb {\n}\n", texts.get(closed));
+        assertEquals(Collections.singletonList("bbb"), classes.get(closed));
+        //the closed file was read from disk, no document got loaded for it
+        assertNull(PPWhereUsedQueryPlugin.getEditorSupport(closed).getDocument());
+    }
+
+    @Test
+    public void testCancelStopsPosting() throws Exception {
+        final List<FileObject> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(createFile("f" + i + ".pp", "class f" + i + " {\n}\n"));
+        }
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final AtomicInteger taken = new AtomicInteger();
+        //the user cancels while the fifth file is handed out
+        Collection<FileObject> candidates = new AbstractCollection<FileObject>() {
+            @Override
+            public Iterator<FileObject> iterator() {
+                final Iterator<FileObject> it = files.iterator();
+                return new Iterator<FileObject>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public FileObject next() {
+                        if (taken.incrementAndGet() == 5) {
+                            cancelled.set(true);
+                        }
+                        return it.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return files.size();
+            }
+        };
+        final AtomicInteger visited = new AtomicInteger();
+        PPWhereUsedQueryPlugin.visitFiles(candidates, cancelled, false, new PPWhereUsedQueryPlugin.FileVisitor() {
+            @Override
+            public void visit(FileObject file, CharSequence text, PElement root) {
+                visited.incrementAndGet();
+            }
+        });
+        assertEquals(5, taken.get());
+        assertTrue("visited " + visited.get(), visited.get() < 5);
+    }
+
+    @Test
+    public void testCancelStopsParsing() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("class aaa").append(i).append(" { $x = ").append(i).append(" notice($x) }\n");
+        }
+        FileObject large = createFile("large.pp", sb.toString());
+        FileObject small = createFile("small.pp", "class bbb {\n}\n");
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final List<FileObject> visited = Collections.synchronizedList(new ArrayList<FileObject>());
+        //the small file is visited first and cancels the search, the large one stops parsing or is not started
+        PPWhereUsedQueryPlugin.visitFiles(Arrays.asList(small, large), cancelled, false, new PPWhereUsedQueryPlugin.FileVisitor() {
+            @Override
+            public void visit(FileObject file, CharSequence text, PElement root) {
+                visited.add(file);
+                cancelled.set(true);
+            }
+        });
+        assertEquals(Collections.singletonList(small), visited);
+    }
+
+    private FileObject createFile(String name, String content) throws IOException {
+        FileObject file = FileUtil.createData(FileUtil.toFileObject(getWorkDir()), name);
+        try (OutputStream os = file.getOutputStream()) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    /**
+     * the parser is registered in the module layer, which tests don't load
+     */
+    public static final class PuppetParserRegistration implements MimeDataProvider {
+        @Override
+        public Lookup getLookup(MimePath mimePath) {
+            return PPConstants.MIME_TYPE.equals(mimePath.getPath()) ? Lookups.singleton(new PuppetParserFactory()) : null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 mkleint
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.tropyx.nb_puppet.semantic;
+
+import com.tropyx.nb_puppet.parser.PElement;
+import com.tropyx.nb_puppet.parser.PResource;
+import com.tropyx.nb_puppet.parser.PuppetSourceParser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+import org.netbeans.junit.NbTestCase;
+
+public class DuplicateResourcesTest extends NbTestCase {
+
+    public DuplicateResourcesTest(String name) {
+        super(name);
+    }
+
+    @Test
+    public void testSameResourceInTwoNodes() throws Exception {
+        PElement root = PuppetSourceParser.parse(
+                "node 'web' {\n"
+              + "  file { '/etc/motd': }\n"
+              + "}\n"
+              + "node 'db' {\n"
+              + "  file { '/etc/motd': }\n"
+              + "}\n");
+        assertTrue(DuplicateResources.findDuplicates(DuplicateResources.collectDeclarations(root)).isEmpty());
+    }
+
+    @Test
+    public void testSameResourceInTwoClasses() throws Exception {
+        PElement root = PuppetSourceParser.parse(
+                "class a {\n"
+              + "  package { 'vim': }\n"
+              + "}\n"
+              + "class b {\n"
+              + "  package { 'vim': }\n"
+              + "}\n");
+        assertTrue(DuplicateResources.findDuplicates(DuplicateResources.collectDeclarations(root)).isEmpty());
+    }
+
+    @Test
+    public void testDuplicateInOneScope() throws Exception {
+        PElement root = PuppetSourceParser.parse(
+                "class a {\n"
+              + "  file { '/etc/motd': }\n"
+              + "  if $x {\n"
+              + "    file { '/etc/motd': }\n"
+              + "  }\n"
+              + "  file { '/etc/motd': }\n"
+              + "}\n");
+        Map<PResource, String> duplicates = DuplicateResources.findDuplicates(DuplicateResources.collectDeclarations(root));
+        assertEquals(Arrays.asList("file[/etc/motd]"), new ArrayList<>(duplicates.values()));
+    }
+}